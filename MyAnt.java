@@ -4,38 +4,46 @@ import ants.*;
 import java.awt.Point;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.FileHandler;
-import java.util.logging.Handler;
-import java.util.logging.Logger;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
 import java.util.logging.SimpleFormatter;
 
 //
  // Future Improvements:
- // Support variable number of Scanners, with different preferred routes, for bigger maps.
  // Could optimize when scanners choose to return home.  Abstract out more logic.
- // Make threshold parameters easier to modify.
- // Leave the unused portion of the grid null, rather than default to a value.
+ // Bound the routing buffers by the explored area rather than the whole span.
 //
 
 /**
  * Implementation class for an ant.
  * Let's get these little buggers munching!
  * <p>
- * During communication, the entire {@link AntKnowledge} "knowledge" object of the sending ant is transfered to the receiver.
- * Any information updated more recently on the received grid will overwrite the contained grid.
+ * During communication, the sending ant transfers an {@link AntMessage} with the spots of its {@link AntKnowledge} that changed since it last talked.
+ * Any information updated more recently in the received spots will overwrite the contained grid.
+ * The spots travel grouped by chunk, and each chunk keeps stamps of the years it knows, so a received chunk holding nothing newer is skipped without comparing its spots.
  * <p>
  * When the program began running slowly, I inserted performance timers throughout the various methods.  This helped me gauge where the problem areas were.
  * By far, the biggest delays were in the "send" and "receive" methods.  Serializing the large GRID objects that each ant carried was a slow operation.
  * The options were to either 1. Send only the subset of spots that had been updated recently by this ant or 2. Send less frequently, or both.
- * The first would likely have been the most valuable, realizing the gain without losing information.  I chose the second because it was
- * quicker and didn't diminish the quality significantly.
+ * The first was the most valuable, realizing the gain without losing information, and is what the ants do now.
+ * Each message carries the sender's knowledge version and the version it builds on.  If an ant sees that it missed an update,
+ * it asks for the whole map in its next message, so no information is lost when ants miss each other.
+ * Along with the request it sends a digest of its own map, one hash per chunk, and the friend only sends back the chunks whose hashes differ.
+ * Messages can also be held to a byte budget (AntBrain.sendBudget, off by default): the changed spots are ranked, food first, then newly found obstacles,
+ * then the most recently seen, and whatever doesn't fit waits for the next message.
  * <p>
  * The search algorithm in the Brain.localExplore method does a good job of searching the map.  Details can be found in the Javadoc of that method.
  * This method will rarely fail to traverse any valid squares.  However, it can happen.  An optimization could be made to handle this rare edge case.
  * <p>
  * Javadoc won't be created for inner classes, so detailed reference will have to be done by reading the comments in the source code.
  * <p>
- * When the scanning ant completes scanning the map, it becomes a worker ant on the spot.
+ * Several Scanners are elected, one for every AntBrain.ANTS_PER_SCANNER ants and at most AntBrain.scanners of them, and each explores its own sector of the map.
+ * When a scanning ant completes scanning its sector, it reports home and becomes a worker ant.
  * <p>
  * @author Jesse Smith
  * @version  %I%, %G%
@@ -49,6 +57,9 @@ public class MyAnt implements ants.Ant {
     //My name, randomly selected by the queen - This is just for fun during logging
     private String myName = null;
     
+    //Encodes my messages and decodes my friends' messages, reusing its buffers between turns.
+    private MessageCodec codec = new MessageCodec();
+    
     final boolean DEBUG = false;
     
     //CONSTANTS
@@ -82,16 +93,16 @@ public class MyAnt implements ants.Ant {
                 PerfMonitor.log(this.brain.knowledge.year);
             }
         
-        AntLogger.infoLog(this.toString());
+        AntLogger.infoLog("%s", this);
         
         try {
             //Do things with surroundings object here
-            PerfMonitor.startClock(PerfMonitor.METHOD_ANALYZE_SURROUNDINGS, this.hashCode());
+            long start = PerfMonitor.startClock();
             brain.analyzeSurroundings(surroundings);
-            PerfMonitor.stopClock(PerfMonitor.METHOD_ANALYZE_SURROUNDINGS, this.hashCode());
+            PerfMonitor.stopClock(PerfMonitor.METHOD_ANALYZE_SURROUNDINGS, start);
         }
         catch (Exception e) {
-            AntLogger.infoLog("Unexpected exception analyzing surroundings object: " + e.toString());
+            AntLogger.infoLog("Unexpected exception analyzing surroundings object: %s", e);
         }
         try {
             //If the ant is young, do some basic schooling.
@@ -104,22 +115,22 @@ public class MyAnt implements ants.Ant {
                     //this.brain.assignScanners();
                     return Action.HALT;
                 case AntBrain.WORKER:
-                    if (DEBUG) PerfMonitor.startClock(PerfMonitor.METHOD_DO_WORK, this.hashCode());
+                    long workStart = PerfMonitor.startClock();
                     Action a = brain.doWork();
-                    if (DEBUG) PerfMonitor.stopClock(PerfMonitor.METHOD_DO_WORK, this.hashCode());
+                    PerfMonitor.stopClock(PerfMonitor.METHOD_DO_WORK, workStart);
                     return a;
                 case AntBrain.SCANNER:
                     //AntLogger.infoLog("------SCANNING LEFT------");
-                    if (DEBUG) PerfMonitor.startClock(PerfMonitor.METHOD_SEARCH, this.hashCode());
+                    long searchStart = PerfMonitor.startClock();
                     Action b = brain.search();
-                    if (DEBUG) PerfMonitor.stopClock(PerfMonitor.METHOD_SEARCH, this.hashCode());
+                    PerfMonitor.stopClock(PerfMonitor.METHOD_SEARCH, searchStart);
                     return b;
                 default:
                     return(brain.doWork());
             }
         }
         catch (Exception e) {
-            AntLogger.infoLog("Unexpected exception calculating next Action: " + e.toString());
+            AntLogger.infoLog("Unexpected exception calculating next Action: %s", e);
         }
         
         AntLogger.infoLog("Couldn't calculate an action!");
@@ -133,62 +144,41 @@ public class MyAnt implements ants.Ant {
      * Calculates the optimal message to be communicated to a nearby ant.
      * <p>
      * This message is based on the information this ant has learned through it's travels, and by talking to other friendly ants.
-     * To send a message, ants serialize their {@link AntKnowledge} "knowledge" object and send it to the other ant.
+     * To send a message, ants encode an {@link AntMessage} holding only the spots that changed since this ant last talked,
+     * or the whole known map if another ant asked for it.
      * WORKER ants don't explore, and thus don't need to communicate their grid.
      * 
-     * @return the ant's {@link AntKnowledge} object as a byte[], null if nothing to say to this ant.
+     * @return the ant's {@link AntMessage} object as a byte[], null if nothing to say to this ant.
      */
     @Override
     public byte[] send() {
-        try {
-            if (DEBUG) PerfMonitor.startClock(PerfMonitor.METHOD_SEND, this.hashCode());
-        }
-        catch (Exception e) {
-            AntLogger.infoLog("Caught performance exception starting METHOD_RECEIVE check: " + e); 
-        }
+        long sendStart = PerfMonitor.startClock();
         //AntLogger.infoLog(myName + " is talking");
         byte[] message;
         
         try {
-            AntKnowledge serialObject;
             if (myName == null){
                 //I have nothing to say, I'm a new born.
-                if (DEBUG) PerfMonitor.stopClock(PerfMonitor.METHOD_SEND, this.hashCode());
+                PerfMonitor.stopClock(PerfMonitor.METHOD_SEND, sendStart);
                 return null;
             }
-            //If this ant is a WORKER ant, send a new knowledge object without a grid.
-            if (this.brain.knowledge.role == AntBrain.WORKER && !this.brain.inYouth()){
-                serialObject = new AntKnowledge(AntBrain.WORKER);
-                serialObject.year = this.brain.knowledge.year;
-                serialObject.age = this.brain.knowledge.age;
-                serialObject.id = this.brain.knowledge.id;
-            }
-            else {
-                serialObject = this.brain.knowledge;
-            }
-            
-            //Serialize the knowledge object.
-            if (DEBUG) PerfMonitor.startClock(PerfMonitor.SEND_BUNDLE, this.hashCode());
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            ObjectOutput out = new ObjectOutputStream(bos);   
-            out.writeObject(serialObject);
-            message = bos.toByteArray();
-            out.close();
-            bos.close();
+            //WORKER ants don't explore, so they only send the message header and the food they were sent for, without any of the grid.
+            boolean withGrid = !(this.brain.knowledge.role == AntBrain.WORKER && !this.brain.inYouth());
+            AntMessage serialObject = this.brain.buildMessage(withGrid);
             
-            if (DEBUG) PerfMonitor.stopClock(PerfMonitor.SEND_BUNDLE, this.hashCode());
+            //Encode the message object.
+            long encodeStart = PerfMonitor.startClock();
+            message = codec.encode(serialObject);
+            PerfMonitor.stopClock(PerfMonitor.SEND_BUNDLE, encodeStart);
             if (this.brain.knowledge.role == AntBrain.SCANNER)
                 this.brain.setNewFoodToReport(0);
         }
-        catch (IOException e) {
-            AntLogger.infoLog("Caught exception serializing grid object: " + e);
-            return null;
-        }
         catch (Exception e) {
-            AntLogger.infoLog("Caught data exception serializing grid object: " + e);
+            AntLogger.infoLog("Caught data exception serializing grid object: %s", e);
+            PerfMonitor.stopClock(PerfMonitor.METHOD_SEND, sendStart);
             return null;
         }
-        if (DEBUG) PerfMonitor.stopClock(PerfMonitor.METHOD_SEND, this.hashCode());
+        PerfMonitor.stopClock(PerfMonitor.METHOD_SEND, sendStart);
         return (message);
         
     }
@@ -202,80 +192,65 @@ public class MyAnt implements ants.Ant {
      */
     @Override
     public void receive(byte[] data) {
-        try {
-            if (DEBUG) PerfMonitor.startClock(PerfMonitor.METHOD_RECEIVE, this.hashCode());
-        }
-        catch (Exception e) {
-            AntLogger.infoLog("Caught performance exception starting METHOD_RECEIVE check: " + e); 
-        }
+        long receiveStart = PerfMonitor.startClock();
         //AntLogger.infoLog(myName + " is listening");
-        AntKnowledge friendKnowledge = null;
+        AntMessage friendMessage = null;
         if (myName == null){
-            if (DEBUG) PerfMonitor.stopClock(PerfMonitor.METHOD_RECEIVE, this.hashCode());
+            PerfMonitor.stopClock(PerfMonitor.METHOD_RECEIVE, receiveStart);
             return;
         }
         if (data == null){
             //Nothing from other ant.
-            if (DEBUG) PerfMonitor.stopClock(PerfMonitor.METHOD_RECEIVE, this.hashCode());
+            PerfMonitor.stopClock(PerfMonitor.METHOD_RECEIVE, receiveStart);
             return;
         }
         
         try {
-            //Deserialize the data from the other ant.
-            if (DEBUG) PerfMonitor.startClock(PerfMonitor.RECEIVE_BUNDLE, this.hashCode());
-            ByteArrayInputStream bis = new ByteArrayInputStream(data);
-            ObjectInput in = new ObjectInputStream(bis);
-            friendKnowledge = (AntKnowledge)in.readObject(); 
-            bis.close();
-            in.close();
-            if (DEBUG) PerfMonitor.stopClock(PerfMonitor.RECEIVE_BUNDLE, this.hashCode());
+            //Decode the data from the other ant.
+            long decodeStart = PerfMonitor.startClock();
+            friendMessage = codec.decode(data);
+            PerfMonitor.stopClock(PerfMonitor.RECEIVE_BUNDLE, decodeStart);
         }
         catch (IOException e) {
-           AntLogger.infoLog("Caught exception deserializing grid object: " + e); 
-        }
-        catch (ClassNotFoundException e) {
-           AntLogger.infoLog("Couldn't cast received data as AntGrid: " + e); 
-        }
-        catch (PerformanceException e) {
-           AntLogger.infoLog("Performance Check error when receiving data as AntGrid: " + e); 
+           AntLogger.infoLog("Caught exception decoding message: %s", e); 
         }
         catch (Exception e) {
-           AntLogger.infoLog("Unknown error when receiving data as AntGrid: " + e); 
+           AntLogger.infoLog("Unknown error when receiving data as AntGrid: %s", e); 
         }
         try {
-            //If I am the Traffic Cop, and I'm talking to a worker who didn't send a grid
-            //This worker will try and find nearby food.  I will do the same, and decrememnt the food on that spot.
-            //This is an optimization to let later ants know there is less food on this spot than believed.
-            if (this.brain.isTrafficCop() && friendKnowledge.role == AntBrain.WORKER && friendKnowledge.grid == null){
-                this.brain.getPointsWithFood();
-                Point nextPoint;
-                if (!this.brain.foodList.isEmpty()){
-                    //The point that the worker will be going to.
-                    nextPoint = this.brain.foodList.remove(0);
-                    Spot foodSpot = this.brain.getSpot(nextPoint);
-                    foodSpot.setFood(foodSpot.food - 1, this.brain.knowledge.year);
-                    AntLogger.infoLog("TC setting food value at spot " + nextPoint + " to " + foodSpot.food);
-                    if (DEBUG) PerfMonitor.stopClock(PerfMonitor.METHOD_RECEIVE, this.hashCode());
+            //If this ant missed one of my updates, send the whole map next time.
+            this.brain.checkResyncRequest(friendMessage);
+            
+            //If I am the Traffic Cop, and I'm talking to a worker, hear which food it was sent for and what it found there,
+            //and send it for more food if it needs some.  This keeps two workers from going for the last of a pile.
+            if (this.brain.isTrafficCop() && friendMessage.role == AntBrain.WORKER){
+                this.brain.dispatchFood(friendMessage);
+                if (!friendMessage.hasGrid){
+                    PerfMonitor.stopClock(PerfMonitor.METHOD_RECEIVE, receiveStart);
                     return;
                 }
             }
             
+            //If the Traffic Cop sent me for food, go get it.
+            if (this.brain.knowledge.role == AntBrain.WORKER && friendMessage.assignments != null)
+                this.brain.takeAssignment(friendMessage.assignments);
+            
             //If I don't know the current year, set the current year to what the trafficCop says.
-            if (friendKnowledge.year > (this.brain.knowledge.year + 1) && this.brain.knowledge.age <= 2)
-                this.brain.knowledge.year = friendKnowledge.year;
+            if (friendMessage.year > (this.brain.knowledge.year + 1) && this.brain.knowledge.age <= 2)
+                this.brain.knowledge.year = friendMessage.year;
             
             //If I received data from a WORKER, just abort.  WORKERS don't need to communicate.
-            if (friendKnowledge.role == AntBrain.WORKER && this.brain.knowledge.year > 2){
-                if (DEBUG) PerfMonitor.stopClock(PerfMonitor.METHOD_RECEIVE, this.hashCode());
+            if (friendMessage.role == AntBrain.WORKER && this.brain.knowledge.year > 2){
+                PerfMonitor.stopClock(PerfMonitor.METHOD_RECEIVE, receiveStart);
                 return;
             }
             
             //Initially assigning someone as the trafficCop
             if (this.brain.knowledge.year == 1) {
                 //If the friend ant is older than me, I can't be the traffic cop.
-                if (friendKnowledge.age <= this.brain.knowledge.age) {
+                if (friendMessage.age <= this.brain.knowledge.age) {
                     //We're both kids, let's calculate who the traffic cop is.
-                    if (brain.amIBetterForTrafficCop(friendKnowledge.id) && !(brain.confirmedTrafficCop()) ) {
+                    if (brain.amIBetterForTrafficCop(friendMessage.id) && !(brain.confirmedTrafficCop()) ) {
                         brain.setAsTrafficCop();
                     }
                     else {
@@ -286,34 +261,28 @@ public class MyAnt implements ants.Ant {
                     brain.setAsWorker();
             }
             
-            //Initially assigning someone as the Scanner
+            //Initially assigning the Scanners, each with its own sector of the map.
             if (this.brain.knowledge.year == 2) {
                 if (!this.brain.isTrafficCop() && 
-                    !this.brain.isTrafficCop(friendKnowledge.role)){
-                    if (friendKnowledge.id < this.brain.knowledge.id)
-                        this.brain.setAsScanner();
-                    else{
-                        this.brain.setAsWorker();
-                        //Could assign a second scanner here.
-                    }
-                }
+                    !this.brain.isTrafficCop(friendMessage.role))
+                    this.brain.electScanner(friendMessage.id);
             }
             
             //Tell this scanner that it has recently talked to the TC.
             if (this.brain.knowledge.role == AntBrain.SCANNER
-                    && (friendKnowledge.role == AntBrain.TRAFFIC_COP))
+                    && (friendMessage.role == AntBrain.TRAFFIC_COP))
                 this.brain.setLastTalkedToNonScanner();
             
-            //For each spot on the grid, if the other ant has traveled there more recently than I, copy in their data.
-            if (DEBUG) PerfMonitor.startClock(PerfMonitor.RECEIVE_LEARN, this.hashCode());
-            this.brain.learn(friendKnowledge);
-            if (DEBUG) PerfMonitor.stopClock(PerfMonitor.RECEIVE_LEARN, this.hashCode());
-            if (DEBUG) PerfMonitor.stopClock(PerfMonitor.METHOD_RECEIVE, this.hashCode());
+            //For each spot in the message, if the other ant has traveled there more recently than I, copy in their data.
+            long learnStart = PerfMonitor.startClock();
+            this.brain.learn(friendMessage);
+            PerfMonitor.stopClock(PerfMonitor.RECEIVE_LEARN, learnStart);
+            PerfMonitor.stopClock(PerfMonitor.METHOD_RECEIVE, receiveStart);
         }
         catch(Exception e) 
         {
-            AntLogger.infoLog("Error receiving message from friendly ant: " + e);
-            if (DEBUG) PerfMonitor.stopClock(PerfMonitor.METHOD_RECEIVE, this.hashCode());
+            AntLogger.infoLog("Error receiving message from friendly ant: %s", e);
+            PerfMonitor.stopClock(PerfMonitor.METHOD_RECEIVE, receiveStart);
         }
         
     }
@@ -328,8 +297,7 @@ public class MyAnt implements ants.Ant {
             //Being born!
             this.brain = new AntBrain();
             this.myName = getNewName();
-            if (DEBUG) PerfMonitor.registerAnt(this.hashCode());
-            AntLogger.infoLog("*******A STAR IS BORN***** " + this.myName);
+            AntLogger.infoLog("*******A STAR IS BORN***** %s", this.myName);
         }
         this.brain.incAge();
         this.brain.incYear();
@@ -369,38 +337,70 @@ class AntBrain {
     
     //Java HashCode object ID of the ant.
     private int antID;
-    //Size of grid
-    private int GRIDSIZE = 72;
     /** Confirmed this ant as a worker. */
     boolean confirmedTrafficCop = false;
-    /** {@link Point} representing where the ant is on the grid now. */
+    /** {@link Point} representing where the ant is on the grid now, relative to home. */
     Point currentPoint;
     //Number of ants on this spot with me now.
     private int numAnts;
     //Am I holding food
     private boolean holdingFood = false;
+    //Food the Traffic Cop sent me for, relative to home, or null if I pick my own.  See {@link FoodDispatcher}.
+    private Point assignedFood = null;
+    //Have I stood on the assignedFood, so I know how much is left there.
+    private boolean reachedAssignedFood = false;
+    //Hands out food to the workers, kept only by the Traffic Cop.
+    private FoodDispatcher dispatcher = null;
     //Scanner variables to help reporting
     boolean firstFoodReportComplete = false, foundFirstFood = false;
     
-    //The current route of the ant.
-    private LinkedList<Move> currentRoute = null;
-    
-    //The point representing Home.
-    private Point homePoint = null;
+    //The current route of the ant, as the steps still to take.
+    Route currentRoute = null;
+    //{@link AntKnowledge#blockedVersion} when the currentRoute was last checked for blocked spots.  See {@link #repairRoute()}.
+    private int routeCheckedVersion = 0;
+    //Routes found recently, by start and target location.  See {@link #findRoute(int)}.
+    private RouteCache routeCache = new RouteCache(ROUTE_CACHE_SIZE);
     
     //Should I route home immediately.
     private boolean goHome = false;
     
-    //List of points that need to be searched.  Used by Scanner ants.
-    private ArrayList<Point> searchList = new ArrayList();
+    //Knowledge version last learned from each friend ant, by id.
+    private HashMap<Integer, Integer> friendVersions = new HashMap<>();
+    //Ids of friend ants whose updates I missed, and who should send me their whole map.
+    private HashSet<Integer> resyncRequests = new HashSet<>();
+    //Another ant missed one of my updates, so the next message should carry the whole map.
+    private boolean sendWholeMap = false;
+    //Digests of the maps of the ants asking for my whole map, and whether one of them asked without a digest.
+    private ArrayList<ChunkDigest> resyncDigests = new ArrayList<>();
+    private boolean resyncWithoutDigest = false;
+    /** Most bytes of changed spots in one message, the most valuable first, or 0 to send them all.  Spots that don't fit wait for the next message. */
+    int sendBudget = SEND_BUDGET;
+    /** Which search {@link #findRoute} uses: {@link #PLANNER_A_STAR}, {@link #PLANNER_JUMP_POINT}, {@link #PLANNER_HIERARCHICAL}, {@link #PLANNER_LANDMARKS} or {@link #PLANNER_BIDIRECTIONAL}. */
+    int routePlanner = ROUTE_PLANNER;
+    /** Most Scanners elected in year 2, each exploring its own sector of the map.  See {@link #electScanner}. */
+    int scanners = SCANNERS;
+    
+    //Cell returned by the exploration frontier, reused between lookups.  Used by Scanner ants.
+    private int[] nextToExplore = new int[1];
     
-    /** List of {@link Point} objects that contain food. */
-    ArrayList<Point> foodList = new ArrayList();
+    /** Cells with food, closest first, as found by {@link #getCellsWithFood}. */
+    int[] foodCells = new int[1];
     
     //Current distance of the SCANNER from home.
     private int threshold = 0;
+    //The max distance the SCANNER should ever search away from home in any direction.
+    private int maxThreshold;
     //Amount by which the threshold distance is increased.
     private int thresholdInc = 2;
+    //As a SCANNER, my sector of the map, and the number of sectors it is split into.  See {@link #inSector}.
+    private int sector = 0, sectors = 1;
+    //As a SCANNER, the directions my sector starts and ends at, going counterclockwise, scaled by SECTOR_SCALE.
+    private long sectorStartX = 0, sectorStartY = 0, sectorEndX = 0, sectorEndY = 0;
+    //As a SCANNER, whether I reached any spot of my sector at the current threshold, and whether the whole ring has been added instead.
+    private boolean ringProgress = false, wholeRing = false;
+    //Ids of the other ants that aren't the Traffic Cop heard in the Scanner election, and how many of them have a lower id than mine.
+    private HashSet<Integer> electors = null;
+    private int scannerRank = 0;
     //Number of turns before the SCANNER last spoke to the TC.
     private int lastTalkedToNonScanner = 0;
     //As a SCANNER, amount of food I have not yet reported on.
@@ -411,10 +411,50 @@ class AntBrain {
     //Constants
     /** Ant roles */
     static final int TRAFFIC_COP = 1, WORKER = 2, SCANNER = 3;
+    /** Route planners, see {@link #routePlanner}. */
+    static final int PLANNER_A_STAR = 0, PLANNER_JUMP_POINT = 1, PLANNER_HIERARCHICAL = 2, PLANNER_LANDMARKS = 3, PLANNER_BIDIRECTIONAL = 4;
     /** Enable route debugging. */
     static final boolean DEBUG_ROUTE = false;
+    /** Every {@link Direction}, by ordinal.  Direction.values() makes a new array on every call. */
+    static final Direction[] DIRECTIONS = Direction.values();
+    /** The step in x and y taken by moving in each {@link Direction}, by ordinal.  NORTH is y + 1, EAST is x + 1. */
+    static final int[] STEP_X = new int[DIRECTIONS.length], STEP_Y = new int[DIRECTIONS.length];
+    static {
+        for (Direction d : DIRECTIONS){
+            switch (d){
+                case NORTH: STEP_Y[d.ordinal()] = 1; break;
+                case SOUTH: STEP_Y[d.ordinal()] = -1; break;
+                case EAST: STEP_X[d.ordinal()] = 1; break;
+                case WEST: STEP_X[d.ordinal()] = -1; break;
+                default: break;
+            }
+        }
+    }
+    /** Working state for {@link #findRoute}, shared by all ants on a thread. */
+    private static final ThreadLocal<RouteSearch> ROUTE_SEARCH = new ThreadLocal<RouteSearch>() {
+        @Override
+        protected RouteSearch initialValue() {
+            return new RouteSearch();
+        }
+    };
+    /** Send only the spots changed since the last message, instead of the whole map every time. */
+    static final boolean DELTA_SYNC = true;
+    /** Send a {@link ChunkDigest} with resync requests, so friends only send back the chunks that differ. */
+    static final boolean DIGEST_RESYNC = true;
+    /** Most routes each ant keeps in its route cache. */
+    static final int ROUTE_CACHE_SIZE = 16;
+    /** Default for {@link #sendBudget}. */
+    static final int SEND_BUDGET = 0;
+    /** Default for {@link #routePlanner}. */
+    static final int ROUTE_PLANNER = PLANNER_A_STAR;
+    /** Default for {@link #scanners}. */
+    static final int SCANNERS = 4;
+    /** Ants other than the Traffic Cop for each Scanner elected, so a small colony keeps most of its ants gathering food. */
+    static final int ANTS_PER_SCANNER = 4;
+    //Length the directions of sector edges are scaled to, so they can be kept as integers.
+    private static final double SECTOR_SCALE = 1 << 20;
     
-    /** The max distance a SCANNER should ever search away from home in any direction */
+    /** The default max distance a SCANNER should ever search away from home in any direction */
     static final int MAX_THRESHOLD = 18;
     /** Base number of turns before the SCANNER should report back */
     static final int TALK_THRESHOLD = 10;
@@ -422,15 +462,26 @@ class AntBrain {
     private int ADULT_AGE = 2;
     
     /**
-     * Constructor for the AntBrain.
+     * Constructor for the AntBrain, with the default map size limits.
      * Creates the AntKnowledge object.
      */
     public AntBrain() {
+        this(AntKnowledge.INITIAL_SPAN, AntKnowledge.MAX_SPAN, MAX_THRESHOLD);
+    }
+    
+    /**
+     * Constructor for the AntBrain.
+     * Creates the AntKnowledge object.
+     * @param initialSpan Width of the map to start with, see {@link AntKnowledge}.
+     * @param maxSpan Width the map may grow to.
+     * @param p_maxThreshold The max distance a SCANNER should ever search away from home in any direction.
+     */
+    public AntBrain(int initialSpan, int maxSpan, int p_maxThreshold) {
         //Ants are all born as workers, one will be assigned as the traffic cop.
-        knowledge = new AntKnowledge(WORKER, GRIDSIZE);
-        currentPoint = new Point(36,36);
-        homePoint = new Point(36,36);
-        currentRoute = new LinkedList();
+        knowledge = new AntKnowledge(WORKER, initialSpan, maxSpan);
+        maxThreshold = p_maxThreshold;
+        currentPoint = new Point(0,0);
+        currentRoute = new Route();
     }
     
     //--------CALCULATE STUFF------
@@ -444,12 +495,11 @@ class AntBrain {
             if (knowledge.age % 2 == 1) {
                 return (doMove(this.getConsistantDirection()));
             }
-            findRoute(homePoint);
-            Move nextMove = currentRoute.pollLast();
-            return (doMove(nextMove));   
+            currentRoute.clear();
+            return (moveHome());   
         }
         catch(Exception e){
-            AntLogger.infoLog("Error Navigating home in setup " + e.getMessage());
+            AntLogger.infoLog("Error Navigating home in setup %s", e.getMessage());
             return null;
         }
     }
@@ -461,6 +511,10 @@ class AntBrain {
      * @param surroundings Information about the four surrounding {@link Tile} tiles.
      */
     public void analyzeSurroundings(Surroundings surroundings) {
+        //Make sure the map has room for everything I can see.
+        knowledge.growToFit(currentPoint.x - 1, currentPoint.y - 1);
+        knowledge.growToFit(currentPoint.x + 1, currentPoint.y + 1);
+        
         //See what spots around me are travelable
         Tile here = surroundings.getCurrentTile();
         this.getValidTiles(surroundings);
@@ -470,8 +524,13 @@ class AntBrain {
         if (hereFood > 0 && !foundFirstFood)
             foundFirstFood = true;
         this.setFoodHere(hereFood);
+        if (assignedFood != null && assignedFood.equals(currentPoint))
+            reachedAssignedFood = true;
 
         this.numAnts = here.getNumAnts();
+        
+        //What I just saw, or learned since last turn, might block my route.
+        this.repairRoute();
     }
     
     /**
@@ -479,7 +538,7 @@ class AntBrain {
      * @return True or False, is this ant currently standing at home.
      */
     public boolean atHome(){
-        return (currentPoint.x == 36 && currentPoint.y == 36);
+        return (currentPoint.x == 0 && currentPoint.y == 0);
     }
     
     /**
@@ -487,7 +546,7 @@ class AntBrain {
      * @return "move" {@link Action} to the next closest spot that needs to be explored.
      */
     public Action search() {
-        while (currentRoute.isEmpty()){
+        while (currentRoute.isEmpty() && this.knowledge.role != AntBrain.WORKER){
             this.localExplore();
         }
         //If i switched to a WORKER, jump over
@@ -500,8 +559,7 @@ class AntBrain {
             this.localExplore();
         }
         //Grab next move from my currentRoute
-        Move nextMove = currentRoute.pollLast();
-        return (doMove(nextMove));
+        return (doMove(currentRoute.pollNext()));
     }
     
     /**
@@ -515,22 +573,21 @@ class AntBrain {
         if (holdingFood) {
             if (this.atHome()) {
                 holdingFood = false;
+                //The Traffic Cop heard about this food when I got home, so I'll wait for a new assignment.
+                assignedFood = null;
+                reachedAssignedFood = false;
                 currentRoute.clear();
                 return (Action.DROP_OFF);
             }
             else{
-                //Not holding food, so find some or go home and wait.
+                //Holding food, so bring it home.
                 try {
                     if (goHome){
-                        //I should go home to get more information.
-                        findRoute(homePoint);
+                        //I should go home to get more information.  Any old route is out of date.
+                        currentRoute.clear();
+                        goHome = false;
                     }
-                    if (currentRoute.isEmpty()){
-                        findRoute(homePoint);
-                    }
-                    Move nextMove = currentRoute.pollLast();
-                    //AntLogger.infoLog("NEXT MOVE FOR HOMEWARD ANT: " + nextMove);
-                    return (doMove(nextMove));    
+                    return (moveHome());    
                 }
                 catch (Exception e){
                     AntLogger.infoLog("Error Navigating home with food");
@@ -541,10 +598,11 @@ class AntBrain {
         
         //If I'm not holding food, but there is food on this spot, collect it!
         //Make sure another ant doesn't snatch it first??
-        if (this.getCurrentSpot().food > 0 && !(this.atHome())) {
+        int hereCell = this.getCurrentCell();
+        if (knowledge.getFood(hereCell) > 0 && !(this.atHome())) {
             holdingFood = true;
             //Set remaining food on this spot to the value after everyone here has gathered.
-            this.getCurrentSpot().setFood((this.getCurrentSpot().food - this.numAnts), this.knowledge.year);
+            knowledge.setFood(hereCell, (knowledge.getFood(hereCell) - this.numAnts), this.knowledge.year);
             goHome = true;
             return (Action.GATHER);
         }
@@ -558,131 +616,89 @@ class AntBrain {
                 if (currentRoute.isEmpty()){
                     //If no food known, home.
                     if (!this.atHome()){
-                        findRoute(homePoint);
+                        findRoute(this.getHomeCell());
                     }
                     return(Action.HALT);
                 }
             }
-            Move nextMove = currentRoute.pollLast();
-            return (doMove(nextMove));
+            return (doMove(currentRoute.pollNext()));
         }
         //This shouldn't ever happen!! Throw error.
         return (this.dance());
     }
     
     //--------NAVIGATE STUFF-----
-    /**
-     * Calculate all neighboring {@link Tile}s that are traversable.
-     * @param basePoint The base {@link Point} from which to calculate valid neighbors.
-     * @return The ArrayList containing {@link Move} objects for the valid neighbors.
-     */
-    public ArrayList getAllValidMoves(Point basePoint) {
-        ArrayList list = new ArrayList();
-        for (Direction d : Direction.values())
-        {
-            Point newPoint = this.movePoint(basePoint, d);
-            Spot trySpot = this.getSpot(newPoint);
-            if (trySpot != null){ //Spot must be on grid, or else it returns null
-                if (trySpot.traversable)
-                    list.add(new Move(newPoint));
-            }
-        }
-        return list;
-    }
-    
     /**
      * Get a valid {@link Direction} for this spot, and consistently return the same {@link Direction} on subsequent calls.
-     * @return A {@link Direction} in which to move.
+     * @return Ordinal of a {@link Direction} in which to move, or -1 if there is none.
      */
-    private Direction getConsistantDirection() {
-        for (Direction d : Direction.values())
+    private int getConsistantDirection() {
+        for (int d = 0; d < DIRECTIONS.length; d++)
         {
-            Spot trySpot = this.getSpot(currentPoint, this.directionToGrid(d));
-            if (trySpot != null){ //Spot must be on grid, or else it returns null
-                if (trySpot.traversable)
-                    return(d);
-            }
+            int tryCell = knowledge.cell(currentPoint.x + STEP_X[d], currentPoint.y + STEP_Y[d]);
+            if (tryCell >= 0 && knowledge.isTraversable(tryCell)) //Spot must be on grid, or else it returns -1
+                return(d);
         }
-        return (null);
+        return (-1);
     }
     
     /**
-     * Modify this ant's currentPoint {@link Point} in {@link Direction} of d.
-     * @param d {@link Direction} in which to move.
-     * @return The same {@link Direction} as given as parameter
+     * Find the next step home, by moving downhill on the distance field to home kept by {@link AntKnowledge#homeDistance}.
+     * @return Ordinal of the {@link Direction} of the step, or -1 if I'm home or the field can't get me there.
      */
-    private Direction move(Direction d){
-        if (d.name().compareTo("NORTH") == 0) {
-            currentPoint.y++;
-        }
-        if (d.name().compareTo("SOUTH") == 0) {
-            currentPoint.y--;
-        }
-        if (d.name().compareTo("EAST") == 0) {
-            currentPoint.x++;
-        }
-        if (d.name().compareTo("WEST") == 0) {
-            currentPoint.x--;
+    private int getHomewardDirection() {
+        int here = this.getCurrentCell();
+        if (here < 0)
+            return -1;
+        int distance = knowledge.homeDistance(here);
+        if (distance <= 0)
+            return -1;
+        for (int d = 0; d < DIRECTIONS.length; d++){
+            int tryCell = knowledge.cell(currentPoint.x + STEP_X[d], currentPoint.y + STEP_Y[d]);
+            if (tryCell >= 0 && knowledge.homeDistance(tryCell) == distance - 1)
+                return d;
         }
-        return d;    
+        return -1;
     }
     
     /**
-     * Convert a {@link Direction} to a distance 1 {@link Point}.
-     * @param d The {@link Direction} used.
-     * @return {@link Point} object of distance 1.
+     * Take the next step home, downhill on the distance field to home, or along an A* route if the field can't get me there.
+     * @return "move" {@link Action} towards home.
      */
-    private Point directionToGrid(Direction d) {
-        Point p = null;
-        if (d.name().compareTo("NORTH") == 0) {
-            p = new Point(0,1);
-        }
-        if (d.name().compareTo("SOUTH") == 0) {
-            p = new Point(0,-1);
-        }
-        if (d.name().compareTo("EAST") == 0) {
-            p = new Point(1,0);
-        }
-        if (d.name().compareTo("WEST") == 0) {
-            p = new Point(-1,0);
+    private Action moveHome() {
+        int d = this.getHomewardDirection();
+        if (d >= 0){
+            currentRoute.clear();
+            return (doMove(d));
         }
-        return p;
+        if (currentRoute.isEmpty())
+            findRoute(this.getHomeCell());
+        return (doMove(currentRoute.pollNext()));
     }
     
     /**
-     * Convert a distance 1 {@link Point} p to {@link Direction} object.
-     * @param p input {@link Point}.
-     * @return {@link Direction} representing that {@link Point} direction.
+     * Find the {@link Direction} of a step of distance 1.
+     * @param dx Step in x.
+     * @param dy Step in y.
+     * @return Ordinal of the {@link Direction}, or -1 if the step isn't one of the four directions.
      */
-    private Direction gridToDirection(Point p) {
-        if (p.y == 1)
-            return Direction.NORTH;
-        if (p.y == -1)
-            return Direction.SOUTH;
-        if (p.x == 1)
-            return Direction.EAST;
-        if (p.x == -1)
-            return Direction.WEST;
-        
-        return null;
-    }
-    
-    /**
-     * Wrapper for converting Direction to "move" {@link Action}.
-     * @param d the Direction in which to move.
-     * @return {@link Action} object for that direction.
-     */
-    private Action doMove (Direction d) {
-        return Action.move(this.move(d));
+    static int directionOf(int dx, int dy) {
+        for (int d = 0; d < DIRECTIONS.length; d++)
+            if (STEP_X[d] == dx && STEP_Y[d] == dy)
+                return d;
+        return -1;
     }
     
     /**
-     * Wrapper for converting {@link Move} object to "move" {@link Action}.
-     * @param m the {@link Move} object to move the ant.
-     * @return {@link Action} for the ant to move.
+     * Move this ant's currentPoint {@link Point} one step, and convert the step to a "move" {@link Action}.
+     * @param d Ordinal of the {@link Direction} in which to move.
+     * @return {@link Action} for the ant to move, or HALT if there is no step to take.
      */
-    private Action doMove (Move m) {
-        return Action.move(this.move(this.gridToDirection(this.subtractPoints(currentPoint, m.movePoint))));
+    private Action doMove (int d) {
+        if (d < 0)
+            return Action.HALT;
+        currentPoint.translate(STEP_X[d], STEP_Y[d]);
+        return Action.move(DIRECTIONS[d]);
     }
     
     //--------MISC STUFF---------
@@ -708,13 +724,15 @@ class AntBrain {
      * @param p_surroundings Surroundings object containing information about the neighbors.
      */
     private void getValidTiles(Surroundings p_surroundings) {
-        for (Direction c : Direction.values())
+        for (int d = 0; d < DIRECTIONS.length; d++)
         {    
-            Spot currSpot = this.getSpot(currentPoint, this.directionToGrid(c));
-            if (p_surroundings.getTile(c).isTravelable())
-                currSpot.setTraversable(true, knowledge.year);
+            int neighborCell = knowledge.cell(currentPoint.x + STEP_X[d], currentPoint.y + STEP_Y[d]);
+            if (neighborCell < 0)
+                continue; //Past the edge of the map I'm allowed to keep.
+            if (p_surroundings.getTile(DIRECTIONS[d]).isTravelable())
+                knowledge.setTraversable(neighborCell, true, knowledge.year);
             else
-                currSpot.setTraversable(false, knowledge.year);
+                knowledge.setTraversable(neighborCell, false, knowledge.year);
         }
     }
     
@@ -723,87 +741,39 @@ class AntBrain {
      * @param seenFood Amount of food seen on this spot.
      */
     private void setFoodHere(int seenFood){
-        Spot spot = this.getCurrentSpot();
-        if (spot.food == -1)
+        int hereCell = this.getCurrentCell();
+        if (hereCell < 0)
+            return;
+        if (knowledge.getFood(hereCell) == -1)
             newFoodToReport += seenFood;
-        spot.setFood(seenFood, knowledge.year);
-    }
-    
-    /**
-     * Return a Spot object representing this ant's current {@link Tile}.
-     * @return The Current Spot.
-     */
-    public Spot getCurrentSpot() {
-        return (knowledge.grid[currentPoint.x][currentPoint.y]);
-    }
-    
-    /**
-     * Return the spot object located on the grid at the location identified by adding the current location to the input x and y parameters.
-     * @param transX Amount to move in the X direction from the current {@link Point}.
-     * @param transY Amount to move in the Y direction from the current {@link Point}.
-     * @return The Spot being requested.
-     */
-    public Spot getSpot(int transX, int transY) {
-        return (knowledge.grid[currentPoint.x + transX][currentPoint.y + transY]);
-    }
-    
-    /**
-     * Return the Spot object at the point given.
-     * @param somePoint Point to find the Spot at.
-     * @return The Spot being requested.
-     */
-    public Spot getSpot(Point somePoint){
-        return (knowledge.grid[somePoint.x][somePoint.y]);
-    }
-    
-    /**
-     * Return the Spot object at the base {@link Point} added to the transform {@link Point}.
-     * @param basePoint Start at this location on the grid.
-     * @param transPoint Modify by this amount, combining X and Y values.
-     * @return The Spot being requested.
-     */
-    public Spot getSpot(Point basePoint, Point transPoint){
-        int newX = basePoint.x + transPoint.x;
-        int newY = basePoint.y + transPoint.y;
-        if ( Math.abs(newX) >= GRIDSIZE 
-                || Math.abs(newY) >= GRIDSIZE)
-            return null;
-        return (knowledge.grid[newX][newY]);
+        knowledge.setFood(hereCell, seenFood, knowledge.year);
     }
     
     /**
-     * Get a new {@link Point} by moving the basePoint in the {@link Direction} d.
-     * @param basePoint Base {@link Point} for the operation.
-     * @param d {@link Direction} in which to move the basePoint.
-     * @return New {@link Point}.
+     * Return the grid cell of this ant's current {@link Tile}.
+     * @return The current cell, or -1 if it is past the edge of the map.
      */
-    public Point movePoint(Point basePoint, Direction d){
-        Point directionAsPoint = this.directionToGrid(d);
-        return (this.addPoints(basePoint, directionAsPoint));
+    public int getCurrentCell() {
+        return (knowledge.cell(currentPoint.x, currentPoint.y));
     }
     
     /**
-     * Calculate a new {@link Point} by combining the X and Y values of the two points.
-     * @param p1 {@link Point} 1.
-     * @param p2 {@link Point} 2.
-     * @return New {@link Point} representing the combination of X and Y values of the two points.
+     * Return the grid cell at the point given.
+     * @param somePoint Point to find the cell at.
+     * @return The cell being requested, or -1 if the point is off the grid.
      */
-    public Point addPoints(Point p1, Point p2){
-        int newX = p1.x + p2.x;
-        int newY = p1.y + p2.y;
-        if ( Math.abs(newX) >= GRIDSIZE || Math.abs(newY) >= GRIDSIZE)
-            return null;
-        return (new Point(newX, newY));
+    public int getCell(Point somePoint){
+        if (somePoint == null || !knowledge.onGrid(somePoint.x, somePoint.y))
+            return -1;
+        return (knowledge.cell(somePoint.x, somePoint.y));
     }
     
     /**
-     * Calculate a new {@link Point} by subtracting the X and Y values of {@link Point} 1 from {@link Point} 2.
-     * @param p1 Point 1.
-     * @param p2 Point 2.
-     * @return New Point representing the difference of p2 and p1.
+     * Return the grid cell of home, which is always (0, 0).  Cells are renumbered when the map grows, so this isn't kept.
+     * @return The home cell.
      */
-    public Point subtractPoints(Point p1, Point p2){
-        return (new Point(p2.x - p1.x, p2.y - p1.y));
+    public int getHomeCell() {
+        return (knowledge.cell(0, 0));
     }
     
     /**
@@ -849,10 +819,77 @@ class AntBrain {
     }
     
     /**
-     * Set the ant's role to SCANNER.
+     * Set the ant's role to SCANNER, exploring the whole map.
      */
     public void setAsScanner(){
+        this.setAsScanner(0, 1);
+    }
+    
+    /**
+     * Set the ant's role to SCANNER, exploring one sector of the map.
+     * @param p_sector My sector, from 0 to p_sectors - 1.
+     * @param p_sectors Number of sectors the map is split into.
+     */
+    public void setAsScanner(int p_sector, int p_sectors){
         knowledge.role = SCANNER;
+        sector = p_sector;
+        sectors = p_sectors;
+        //Neighboring sectors work out their shared edge the same way, so every spot is in exactly one of them.
+        double start = Math.PI + 2 * Math.PI * sector / sectors, end = Math.PI + 2 * Math.PI * (sector + 1) / sectors;
+        sectorStartX = Math.round(Math.cos(start) * SECTOR_SCALE);
+        sectorStartY = Math.round(Math.sin(start) * SECTOR_SCALE);
+        sectorEndX = Math.round(Math.cos(end) * SECTOR_SCALE);
+        sectorEndY = Math.round(Math.sin(end) * SECTOR_SCALE);
+    }
+    
+    /**
+     * Count a friend in the Scanner election, and take the role my rank gives me so far.
+     * <p>
+     * In year 2, every ant other than the Traffic Cop hears all the others.  One Scanner is elected for every {@link #ANTS_PER_SCANNER} of them,
+     * at least one and at most {@link #scanners}, so a colony of two or more always has a worker.  The ants with the lowest ids become Scanners,
+     * each taking the sector numbered by how many of the others have a lower id than it, and the rest become workers.
+     * Friends heard more than once are only counted once, so once I have heard them all, every ant has counted the same colony, and the role I have is the right one.
+     * @param friendId Id of a friend that isn't the Traffic Cop.
+     */
+    public void electScanner(int friendId){
+        if (electors == null)
+            electors = new HashSet<>();
+        if (electors.add(friendId) && friendId < knowledge.id)
+            scannerRank++;
+        int elected = Math.max(1, Math.min(scanners, (electors.size() + 1) / ANTS_PER_SCANNER));
+        if (scannerRank < elected)
+            this.setAsScanner(scannerRank, elected);
+        else
+            this.setAsWorker();
+    }
+    
+    /**
+     * Is a spot in my sector of the map.
+     * <p>
+     * The sectors are equal slices of the angle around home, so each Scanner's threshold rings grow outward on its own side of the map.
+     * Home is in every sector.  A spot is in the sector if it is at or past the sector's start edge, and before its end edge,
+     * which only takes two cross products against the edges worked out in {@link #setAsScanner(int, int)}.
+     * @param x X of the spot, relative to home.
+     * @param y Y of the spot, relative to home.
+     * @return True if the spot is mine to explore.
+     */
+    public boolean inSector(int x, int y){
+        if (sectors <= 1 || (x == 0 && y == 0))
+            return true;
+        return (atOrPast(sectorStartX, sectorStartY, x, y) && !atOrPast(sectorEndX, sectorEndY, x, y));
+    }
+    
+    /**
+     * Is a spot on an edge, or less than half a turn counterclockwise from it, seen from home.
+     * @param edgeX X of the edge's direction.
+     * @param edgeY Y of the edge's direction.
+     * @param x X of the spot, relative to home.
+     * @param y Y of the spot, relative to home.
+     * @return True if the spot is at or past the edge.
+     */
+    private static boolean atOrPast(long edgeX, long edgeY, int x, int y){
+        long cross = edgeX * y - edgeY * x;
+        return (cross > 0 || (cross == 0 && edgeX * x + edgeY * y > 0));
     }
     
     /**
@@ -923,92 +960,201 @@ class AntBrain {
     }
     
     /**
-     * For new information in the friend ant's grid, copy into this ant's grid.
-     * @param friendGrid Grid from ant friend.
+     * For new information in the friend ant's message, copy into this ant's grid.
+     * <p>
+     * If the message builds on an update from the friend ant that I never received, I ask for the whole map in my next message.
+     * @param friendMessage Message from ant friend.
      */
-    public void learn(AntKnowledge friendGrid) {
-        if (friendGrid == null){
+    public void learn(AntMessage friendMessage) {
+        if (friendMessage == null || !friendMessage.hasGrid){
             return;
         }
-        for (int x=0; x<GRIDSIZE; x++)
+        Integer lastVersion = friendVersions.get(friendMessage.id);
+        if (friendMessage.baseVersion > 0 && (lastVersion == null || lastVersion < friendMessage.baseVersion))
+            resyncRequests.add(friendMessage.id);
+        else
+            friendVersions.put(friendMessage.id, friendMessage.version);
+        
+        for (int group=0; group<friendMessage.numGroups; group++)
         {
-            for (int y=0; y<GRIDSIZE; y++)
-            {
-                Spot mySpot = this.knowledge.grid[x][y];
-                Spot friendSpot = friendGrid.grid[x][y];
-                if (mySpot.yearViewed < friendSpot.yearViewed)
-                    mySpot.copyViewData(friendSpot);
-                if (mySpot.yearVisited < friendSpot.yearVisited)
-                    mySpot.copyVisitData(friendSpot);
-            }
+            //The friend's map may be a different size than mine, but one of its chunks is always one whole chunk of mine.
+            int cell = knowledge.fromSpan(friendMessage.cells[friendMessage.groupStart[group]], friendMessage.span);
+            if (cell >= 0)
+                knowledge.mergeGroup(friendMessage, group, cell >>> Chunk.SPOT_BITS);
         }
     }
     
     /**
-     * Running this method sets the foodList list variable with known grid spots with food, sorted by distance from CurrentPoint {@link Point}.
+     * If the friend ant is asking for my whole map, send it with my next message.
+     * <p>
+     * If the friend sent a digest of its map, only the chunks it doesn't already have will be sent.
+     * @param friendMessage Message from ant friend.
      */
-    public void getPointsWithFood() {
-        foodList.clear();
-        for (int i=0; i < GRIDSIZE; i++){
-            for (int j=0; j < GRIDSIZE; j++){
-                if (i==36 && j==36)
-                    continue;
-                
-                Spot currSpot = this.knowledge.grid[i][j];
-                
-                if (currSpot.food > 0)
-                    foodList.add(new Point(i,j));
+    public void checkResyncRequest(AntMessage friendMessage) {
+        if (friendMessage == null || friendMessage.resync == null)
+            return;
+        for (int friendId : friendMessage.resync){
+            if (friendId == knowledge.id){
+                sendWholeMap = true;
+                if (friendMessage.digest != null)
+                    resyncDigests.add(friendMessage.digest);
+                else
+                    resyncWithoutDigest = true;
             }
         }
-        //Sort by distance to currentpoint.
-        Collections.sort(foodList, CURR_DISTANCE_ORDER);
     }
     
     /**
-     * Clear current foodList list variable and rebuild.
+     * Build the message for nearby ants.
+     * <p>
+     * The message holds the spots changed since my last message, or the whole known map if a friend asked for it.
+     * It also asks for the whole map from any friend whose updates I missed, along with a digest of my map.
+     * A worker tells the Traffic Cop which food it was sent for, and the Traffic Cop hands out food to the workers it met.
+     * @param withGrid Should the message carry grid spots at all.
+     * @return The {@link AntMessage} to send.
+     */
+    public AntMessage buildMessage(boolean withGrid) {
+        AntMessage message = new AntMessage(knowledge);
+        if (withGrid)
+            knowledge.writeSpots(message, sendWholeMap || !DELTA_SYNC, resyncWithoutDigest ? null : resyncDigests, sendBudget);
+        if (!resyncRequests.isEmpty()){
+            message.resync = new int[resyncRequests.size()];
+            int i = 0;
+            for (int friendId : resyncRequests)
+                message.resync[i++] = friendId;
+            resyncRequests.clear();
+            if (DIGEST_RESYNC)
+                message.digest = knowledge.digest();
+        }
+        if (knowledge.role == WORKER && assignedFood != null){
+            message.hasTarget = true;
+            message.targetX = assignedFood.x;
+            message.targetY = assignedFood.y;
+            int targetCell = knowledge.cell(assignedFood.x, assignedFood.y);
+            message.targetFood = (targetCell < 0) ? -1 : knowledge.getFood(targetCell);
+            message.holdingFood = holdingFood;
+            message.atTarget = reachedAssignedFood;
+        }
+        if (dispatcher != null)
+            message.assignments = dispatcher.assignments(knowledge.year);
+        if (withGrid){
+            sendWholeMap = false;
+            resyncDigests.clear();
+            resyncWithoutDigest = false;
+        }
+        return message;
+    }
+    
+    /**
+     * Running this method fills the foodCells array with the closest known grid spots with food, sorted by distance from CurrentPoint {@link Point}.
+     * <p>
+     * The spots come from the food index kept by {@link AntKnowledge}, so the grid isn't scanned.
+     * @param count Maximum number of spots to find.
+     * @return Number of spots found.
+     */
+    public int getCellsWithFood(int count) {
+        if (foodCells.length < count)
+            foodCells = new int[count];
+        int hereCell = this.getCurrentCell();
+        if (hereCell < 0)
+            return 0;
+        return knowledge.foodIndex.nearest(hereCell, this.getHomeCell(), foodCells, count);
+    }
+    
+    /**
+     * Find the food closest to currentPoint {@link Point} by walking distance, not counting any food at home.
+     * <p>
+     * One breadth first search goes out from here and stops at the first cell with food, so food behind a wall doesn't win because it looks close,
+     * and food that can't be reached costs nothing extra.  The search is left in the thread's {@link RouteSearch}, to build a route from.
+     * @return The food cell, or -1 if no known food can be reached.
+     */
+    public int findNearestFood() {
+        int hereCell = this.getCurrentCell();
+        if (hereCell < 0)
+            return -1;
+        return ROUTE_SEARCH.get().searchNearest(knowledge, hereCell, knowledge.foodIndex, this.getHomeCell());
+    }
+    
+    /**
+     * Route to the food the Traffic Cop sent me for, or if I wasn't sent anywhere, or it is gone, find the closest food and route to it.
      */
     public void findNextFood() {
-        Point nextPoint;
-        //Always update the food list, as this ant might have new info.
-        foodList.clear();
-        this.getPointsWithFood();
-
-        if (foodList.isEmpty())
+        if (assignedFood != null){
+            int assignedCell = knowledge.cell(assignedFood.x, assignedFood.y);
+            if (assignedCell >= 0 && knowledge.getFood(assignedCell) > 0 && this.findRoute(assignedCell))
+                return;
+        }
+        //Always look again, as this ant might have new info.
+        currentRoute.clear();
+        int foodCell = this.findNearestFood();
+        if (foodCell >= 0)
+            this.followParents(ROUTE_SEARCH.get(), this.getCurrentCell(), foodCell);
+    }
+    
+    /**
+     * As the Traffic Cop, hear what a worker at home is doing, and send it for more food if it needs some.  See {@link FoodDispatcher}.
+     * @param message The worker's {@link AntMessage}.
+     */
+    public void dispatchFood(AntMessage message) {
+        if (dispatcher == null)
+            dispatcher = new FoodDispatcher();
+        dispatcher.hear(knowledge, message);
+    }
+    
+    /**
+     * Take the food the Traffic Cop sent me for, if any of its assignments are for me.
+     * @param assignments The Traffic Cop's assignments, as the worker's id and the food's location relative to home, three ints each.
+     */
+    public void takeAssignment(int[] assignments) {
+        for (int i=0; i + 2 < assignments.length; i += 3){
+            if (assignments[i] != knowledge.id)
+                continue;
+            if (assignedFood != null && assignedFood.x == assignments[i + 1] && assignedFood.y == assignments[i + 2])
+                return;
+            assignedFood = new Point(assignments[i + 1], assignments[i + 2]);
+            reachedAssignedFood = false;
+            //Any food I was going to pick on my own can wait.
+            if (!holdingFood)
+                currentRoute.clear();
             return;
-        nextPoint=foodList.remove(0);
-        this.findRoute(nextPoint);
+        }
     }
     
     /**
-     * Calculate non-visited {@link Point} objects on the Grid within the current threshold distance.
-     * Update the searchList list variable with the valid points, sorted by distance to CurrentPoint {@link Point}.
+     * Calculate non-visited cells on the Grid within the current threshold distance.
+     * Add them to the exploration frontier kept by {@link AntKnowledge}, which drops them on its own once they are visited or found blocked.
+     * Only spots in my sector are added, see {@link #inSector}, unless the whole ring is being explored to get around a wall.
      * @param threshold Current distance threshold to search within.
      */
     public void getUnexploredThresholdPoints (int threshold){
         //AntLogger.infoLog("Building new Threshold Points list");
-        int lowerBound = this.GRIDSIZE/2 - threshold;
-        int upperBound = this.GRIDSIZE/2 + threshold;
-        for (int i=lowerBound; i <= upperBound; i++){
-            for (int j=lowerBound; j <= upperBound; j++){
-                Spot currSpot = this.knowledge.grid[i][j];
-                
-                if (currSpot.yearVisited >= 0 || (currSpot.yearViewed >=0 && !(currSpot.traversable)));
-                else
-                    searchList.add(new Point(i,j));
+        //Make room for the whole square, as far as the size limit allows.  Growing renumbers the frontier, so do it first.
+        knowledge.growToFit(-threshold, -threshold);
+        knowledge.growToFit(threshold, threshold);
+        if (knowledge.frontier == null)
+            knowledge.frontier = new CellIndex(knowledge.span);
+        for (int i=-threshold; i <= threshold; i++){
+            for (int j=-threshold; j <= threshold; j++){
+                int cell = knowledge.cell(i, j);
+                if (cell >= 0 && knowledge.isUnexplored(cell) && (wholeRing || this.inSector(i, j)))
+                    knowledge.frontier.add(cell);
             }
         }
-        Collections.sort(searchList, CURR_DISTANCE_ORDER);
     }
     
     /**
      * Build a plan for exploring the map.
      * <p>
-     * This algorithm finds non-visited spots within a slowly increasing distance.  Those spots are sorted by distance.
+     * This algorithm finds non-visited spots within a slowly increasing distance.  Those spots are kept in the exploration frontier.
      * <p>
-     * Once the list is available, the ant moves to the closest spot.  On the next turn, the list is resorted by distance to currentPoint, and the ant moves to the closest spot. 
+     * Once the frontier is available, the ant moves to the closest spot.  On the next turn, the frontier is asked again for the spot closest to currentPoint, and the ant moves to it. 
+     * The frontier is updated as spots are visited or found blocked, so it never has to be rebuilt or sorted.
      * Since the spots are routed to one space at a time, there should always be a success method to route to the spot, unless there is an obstacle.
      * <p>
      * If there are no more non-visited spots in the list, the threshold is increased and the algorithm is repeated.
+     * Each Scanner only explores its own sector of the map, so each sector grows its own threshold rings.
+     * If no spot of the sector can be reached at a threshold, say the sector is walled off near home, the whole ring is explored once to find a way around.
+     * When the sector is finished, the Scanner reports home before it becomes a worker.
      * <p>
      * If a {@link Tile} on the list is untraversable, it is makes as such and removed from the list.
      * If a {@link Tile} on the list can't even be viewed because of an obstacle and the route to it is either impossible or outside of the current search threshold, 
@@ -1017,43 +1163,59 @@ class AntBrain {
      */
     public void localExplore() {
         
-        Spot nextSpot;
-        Point nextPoint;
+        int nextCell;
         boolean foundNextMove = false;
         
         //Run home
         //UNLESS I"VE CHATTED TO A WORKER OR TC RECENTLY
-        if ((!firstFoodReportComplete && foundFirstFood) || ((newFoodToReport >= newFoodThreshold) && (lastTalkedToNonScanner > TALK_THRESHOLD + ((int)(this.knowledge.year / 5))))){
+        if ((!firstFoodReportComplete && foundFirstFood) || ((newFoodToReport >= newFoodThreshold) && (lastTalkedToNonScanner > TALK_THRESHOLD + this.knowledge.year / 5))){
             //AntLogger.infoLog("-----------TIME TO HEAD HOME---------");
             if (!firstFoodReportComplete)
                 firstFoodReportComplete = true;
-            this.findRoute(homePoint);
+            this.findRoute(this.getHomeCell());
             return;
         }
         
         while (!foundNextMove){
-            //Add to the searchList.
-            if (searchList.isEmpty()){
-                this.incThreshold();
-                //Max distance in any given direction is max of 18
-                if (threshold > MAX_THRESHOLD){
-                    //Finished checking map!  Set this ant as a worker and start working.
-                    this.knowledge.role = AntBrain.WORKER;
-                    return;
-                }
-                else
+            //Add to the frontier.
+            if (knowledge.frontier == null || knowledge.frontier.size() == 0){
+                if (sectors > 1 && threshold > 0 && threshold <= maxThreshold && !ringProgress && !wholeRing){
+                    //Nothing in my sector could be reached, so look for a way around through the rest of the ring.
+                    wholeRing = true;
                     this.getUnexploredThresholdPoints(threshold);
+                }
+                else{
+                    if (threshold <= maxThreshold){
+                        this.incThreshold();
+                        ringProgress = false;
+                        wholeRing = false;
+                    }
+                    //Max distance in any given direction is maxThreshold
+                    if (threshold > maxThreshold){
+                        //Finished checking my sector of the map!  Report home, then set this ant as a worker and start working.
+                        if (!this.atHome() && this.findRoute(this.getHomeCell()))
+                            return;
+                        this.knowledge.role = AntBrain.WORKER;
+                        return;
+                    }
+                    else
+                        this.getUnexploredThresholdPoints(threshold);
+                }
+                //Nothing left to explore at this threshold either, widen it again.
+                if (knowledge.frontier.size() == 0)
+                    continue;
             }
 
-            Collections.sort(searchList, CURR_DISTANCE_ORDER);
-            nextPoint=searchList.remove(0);
-            nextSpot=this.getSpot(nextPoint);
-            if ((nextSpot.yearViewed >= 0 && !nextSpot.traversable) || nextSpot.yearVisited >= 0){
-                //AntLogger.infoLog("Not List exploring point " + nextPoint + " because no need");
+            knowledge.frontier.nearest(this.getCurrentCell(), -1, nextToExplore, 1);
+            nextCell=nextToExplore[0];
+            knowledge.frontier.remove(nextCell);
+            if (!knowledge.isUnexplored(nextCell)){
+                //AntLogger.infoLog("Not List exploring cell %d because no need", nextCell);
             }
             else{
-                //AntLogger.infoLog("List Exploring to point " + nextPoint);
-                foundNextMove = this.findRoute(nextPoint);
+                //AntLogger.infoLog("List Exploring to cell %d", nextCell);
+                foundNextMove = this.findRoute(nextCell);
+                ringProgress |= foundNextMove;
             }
         }
     }
@@ -1064,7 +1226,7 @@ class AntBrain {
      * This calculates the shortest distance from the currentpoint {@link Point} to the target {@link Point}.
      * This algorithm only uses known {@link Tile}s, and won't help during exploration.
      * <p>
-     * After this method runs, the currentRoute list variable holds the series of points to get from here to target.
+     * After this method runs, the currentRoute holds the steps to get from here to target.
      * <p>
      * The implementation used here was based on the following:
      * http://www.policyalmanac.org/games/aStarTutorial.htm
@@ -1075,535 +1237,3665 @@ class AntBrain {
      * @return True if a route to the point was successfully calculated.  False otherwise.
      */
     public boolean findRoute(Point targetPoint) {
-        
-        if (DEBUG_ROUTE) AntLogger.infoLog("Finding route from point " + currentPoint + " to " + targetPoint);
-                
-        if (currentRoute != null && !currentRoute.isEmpty())
+        if (targetPoint == null || !knowledge.onGrid(targetPoint.x, targetPoint.y)){
             currentRoute.clear();
+            return false;
+        }
+        return findRoute(knowledge.cell(targetPoint.x, targetPoint.y));
+    }
+    
+    /**
+     * Route from the currentPoint {@link Point} to a target cell, as in {@link #findRoute(Point)}.
+     * <p>
+     * The route is stored as the {@link Direction} of each step, so it stays good when the map grows and the cells are renumbered.
+     * <p>
+     * Routes are kept in a small least recently used cache, so an ant making the same trip again, like a worker going back to the same food,
+     * doesn't search again.  A cached route is only used if none of its spots has been found blocked since it was found, although it may
+     * miss a shortcut learned since then.
+     * @param targetCell Target cell to route to.
+     * @return True if a route to the cell was successfully calculated.  False otherwise.
+     */
+    public boolean findRoute(int targetCell) {
         
-        ArrayList<Move> openList = new ArrayList();
-        LinkedList<Move> closedList = new LinkedList();
+        if (DEBUG_ROUTE) AntLogger.infoLog("Finding route from point %s to cell %d", currentPoint, targetCell);
+                
+        currentRoute.clear();
         
-        Move start = new Move(
-                calculateCost(currentPoint, currentPoint),
-                calculateCost(currentPoint, targetPoint),
-                currentPoint, null);
-        openList.add(start);
+        int startCell = this.getCurrentCell();
+        if (targetCell < 0 || startCell < 0)
+            return false;
         
-        while (!openList.isEmpty()) {
-            Move currentMove = (Move)openList.remove(0);
-            if (DEBUG_ROUTE) AntLogger.infoLog("Checking element " + currentMove);
-            if (DEBUG_ROUTE) AntLogger.infoLog("OpenList size: " + openList.size());
-            if (DEBUG_ROUTE) AntLogger.infoLog("printing open list: ");
-            if (DEBUG_ROUTE) this.printRoute(openList);
-            if (currentMove.movePoint.equals(targetPoint)){
-                currentRoute.add(currentMove);
-                //AntLogger.infoLog("Found TARGET!!");
-                break;
-            }
-            openList.remove(currentMove);
-            closedList.add(currentMove);
-            
-            //Get valid moves.  These have a point, but have no costs associated, nor parent links
-            ArrayList<Move> validMoves = getAllValidMoves(currentMove.movePoint);
-            boolean moveAlreadyOnClosedList, moveAlreadyOnOpenList;
-            
-            for (Move checkMove : validMoves){
-                //Is the checkMove the TARGET??
-                moveAlreadyOnClosedList = false;
-                moveAlreadyOnOpenList = false;
-                if (DEBUG_ROUTE) AntLogger.infoLog("Checking Valid Move: " + checkMove);
-                
-                for (Move closedListMove : closedList) {
-                    if (checkMove.isEqualTo(closedListMove)){
-                        moveAlreadyOnClosedList = true;
-                        if (DEBUG_ROUTE) AntLogger.infoLog("Move is on closed list!");
-                        break;
-                    }
-                }
-                if (moveAlreadyOnClosedList){
-                    if (DEBUG_ROUTE) AntLogger.infoLog("Breaking out of closed list");
-                    continue;
-                }   
-                
-                for (Move openListMove : openList) {
-                    if (checkMove.isEqualTo(openListMove)) {
-                        moveAlreadyOnOpenList = true;
-                        if (DEBUG_ROUTE) AntLogger.infoLog("Move is on Open List!");
-                        if ( (currentMove.sourceCost + 1) < openListMove.sourceCost) {
-                            //Have to remove and add the element, so it will resort :(
-                            if (DEBUG_ROUTE) AntLogger.infoLog("But this route is better");
-                            openList.remove(openListMove);
-                            openListMove.parent = currentMove;
-                            openListMove.sourceCost = currentMove.sourceCost + 1;
-                            openList.add(openListMove);
-                            Collections.sort(openList, MOVE_ORDER);
-                        }
-                        break;
-                    }
-                }
-                if (!moveAlreadyOnOpenList){
-                    if (DEBUG_ROUTE) AntLogger.infoLog("Adding move to open list");
-                    //Check Move is not on the openList yet, so add it.
-                    checkMove.setCosts(currentMove.sourceCost + 1,
-                        calculateCost(checkMove.movePoint, targetPoint));
-                    checkMove.parent = currentMove;
-                    if (DEBUG_ROUTE) AntLogger.infoLog("OpenList size: " + openList.size());
-                    boolean status = openList.add(checkMove);
-                    if (DEBUG_ROUTE) AntLogger.infoLog("adding element is: " + status);
-                    Collections.sort(openList, MOVE_ORDER);
-                    if (DEBUG_ROUTE) AntLogger.infoLog("Now OpenList size: " + openList.size());
-                }
+        long key = routeKey(currentPoint.x, currentPoint.y, knowledge.xOf(targetCell), knowledge.yOf(targetCell));
+        int cached = routeCache.get(key);
+        if (cached >= 0){
+            if (isStillClear(cached)){
+                currentRoute.load(routeCache.steps(cached), routeCache.length(cached));
+                if (DEBUG_ROUTE) AntLogger.infoLog("Using cached route: %s", currentRoute);
+                return true;
             }
+            routeCache.remove(key);
         }
-        if (openList.isEmpty()){ 
+        
+        RouteSearch search = ROUTE_SEARCH.get();
+        if (!this.plan(search, startCell, targetCell)){ 
             //No route to target, leave currentRoute empty
             if (DEBUG_ROUTE) AntLogger.infoLog("Unable to reach destination, failure building route");
             return false;
         }
         else{
-            //Build the best route home by following parents.
-            if (DEBUG_ROUTE) AntLogger.infoLog("Found the route to target" + targetPoint);
-            Move nextMove = (Move)currentRoute.get(0);
-            while (nextMove.parent != null) {
-                currentRoute.add(nextMove.parent);
-                nextMove = nextMove.parent;
-            }
-            //Pull the last value.
-            currentRoute.pollLast();
-            if (DEBUG_ROUTE) AntLogger.infoLog("FInal route is: ");
-            if (DEBUG_ROUTE) this.printRoute(currentRoute);
+            if (DEBUG_ROUTE) AntLogger.infoLog("Found the route to cell %d expanding %d points", targetCell, search.expanded);
+            this.followParents(search, startCell, targetCell);
+            if (DEBUG_ROUTE) AntLogger.infoLog("FInal route is: %s", currentRoute);
+            routeCache.put(key, currentRoute, knowledge.blockedVersion);
             return true;
         }
     }
     
     /**
-     * Calculate the direct distance between two points.
-     * @param s First {@link Point}.
-     * @param e Second {@link Point}.
-     * @return Distance between points. Distance in X + distance in Y.
+     * Repair the currentRoute around spots found blocked since it was last checked.
+     * <p>
+     * Nothing is checked unless a spot somewhere has stopped being traversable.  Then the route is walked, and each blocked stretch on it
+     * is replaced by an A* detour from the last clear spot before it to the first clear spot after it, keeping the rest of the route.
+     * If there is no detour, the whole route is found again, and if that fails too, the route is dropped so a new one gets planned.
      */
-    private int calculateCost(Point s, Point e){
-        return (Math.abs(s.x - e.x) + Math.abs(s.y - e.y));
+    public void repairRoute() {
+        if (routeCheckedVersion == knowledge.blockedVersion)
+            return;
+        routeCheckedVersion = knowledge.blockedVersion;
+        
+        while (!currentRoute.isEmpty()){
+            //Walk the route, with the next step at the end, looking for the first blocked spot.
+            int[] steps = currentRoute.toSteps();
+            int x = currentPoint.x, y = currentPoint.y;
+            int clearX = x, clearY = y, blocked = -1, resume = -1;
+            for (int i = steps.length - 1; i >= 0; i--){
+                x += STEP_X[steps[i]];
+                y += STEP_Y[steps[i]];
+                int cell = knowledge.cell(x, y);
+                boolean clear = (cell >= 0 && knowledge.isTraversable(cell));
+                if (blocked < 0){
+                    if (!clear)
+                        blocked = i;
+                    else{
+                        clearX = x;
+                        clearY = y;
+                    }
+                }
+                else if (clear){
+                    resume = i;
+                    break;
+                }
+            }
+            if (blocked < 0)
+                return;
+            if (resume < 0){
+                //The target itself is blocked.
+                if (DEBUG_ROUTE) AntLogger.infoLog("Route target %d,%d found blocked, dropping route", x, y);
+                currentRoute.clear();
+                return;
+            }
+            
+            int from = knowledge.cell(clearX, clearY), to = knowledge.cell(x, y);
+            RouteSearch search = ROUTE_SEARCH.get();
+            currentRoute.clear();
+            if (!this.plan(search, from, to)){
+                //No way around, so route to the target from scratch.
+                int targetX = x, targetY = y;
+                for (int i = resume - 1; i >= 0; i--){
+                    targetX += STEP_X[steps[i]];
+                    targetY += STEP_Y[steps[i]];
+                }
+                if (DEBUG_ROUTE) AntLogger.infoLog("No detour around the blocked spots after %d,%d, routing again", clearX, clearY);
+                this.findRoute(knowledge.cell(targetX, targetY));
+                return;
+            }
+            //Steps after the blocked stretch, then the detour, then the steps before it, so the next step is still at the end.
+            for (int i = 0; i < resume; i++)
+                currentRoute.add(steps[i]);
+            this.followParents(search, from, to);
+            for (int i = blocked + 1; i < steps.length; i++)
+                currentRoute.add(steps[i]);
+            if (DEBUG_ROUTE) AntLogger.infoLog("Repaired route: %s", currentRoute);
+        }
     }
     
     /**
-     * Loop through the route given, printing each point.
-     * @param route Route to print to the log.
+     * Search for a route between two cells with the planner chosen by {@link #routePlanner}.
+     * @param search Search to run.
+     * @param startCell Cell to route from.
+     * @param targetCell Cell to route to.
+     * @return True if the target was reached, in which case {@link #followParents} can build the route.
      */
-    public void printRoute(LinkedList<Move> route){
-        AntLogger.infoLog("The route");
-        int count = 1;
-                
-        for (Move m : route){
-            if (count % 3 == 0)
-                AntLogger.infoLog(m.movePoint + " - ");
-            else
-                AntLogger.infoLog(m.movePoint + " - ");
-            count++;
+    private boolean plan(RouteSearch search, int startCell, int targetCell) {
+        switch (routePlanner){
+            case PLANNER_JUMP_POINT:
+                return search.searchJumpPoints(knowledge, startCell, targetCell);
+            case PLANNER_HIERARCHICAL:
+                return search.searchHierarchical(knowledge, startCell, targetCell);
+            case PLANNER_LANDMARKS:
+                return search.searchLandmarks(knowledge, startCell, targetCell);
+            case PLANNER_BIDIRECTIONAL:
+                return search.searchBidirectional(knowledge, startCell, targetCell);
+            default:
+                return search.search(knowledge, startCell, targetCell);
         }
     }
     
-     /**
-     * Loop through the route given, printing each point.
-     * @param route Route to print to the log.
+    /**
+     * Build the currentRoute by following the parents of the last search back from the target, so the first step is added last.
+     * <p>
+     * A parent is either a neighbor, or for {@link RouteSearch#searchJumpPoints} a jump point in a straight line, which is filled in step by step.
+     * @param search The search that reached the target.
+     * @param startCell Cell the search started from.
+     * @param targetCell Cell the search reached.
      */
-    public void printRoute(ArrayList<Move> route){
-        AntLogger.infoLog("The List");
-        int count = 1;
-                
-        for (Move m : route){
-            if (count % 3 == 0)
-                AntLogger.infoLog(m.movePoint + ":" + m.getTotalCost() + " - ");
-            else
-                System.out.print(m.movePoint + ":" + m.getTotalCost() + " - ");
-            count++;
+    private void followParents(RouteSearch search, int startCell, int targetCell) {
+        for (int cell = targetCell; cell != startCell; ){
+            int parent = search.parentOf(cell);
+            int dx = knowledge.xOf(cell) - knowledge.xOf(parent), dy = knowledge.yOf(cell) - knowledge.yOf(parent);
+            int direction = directionOf(Integer.signum(dx), Integer.signum(dy));
+            for (int i = Math.abs(dx) + Math.abs(dy); i > 0; i--)
+                currentRoute.add(direction);
+            cell = parent;
         }
-        AntLogger.infoLog("");
     }
     
     /**
-     * Comparator to calculate the distance from a {@link Point} to the currentPoint.
+     * Pack a start and a target location into a route cache key.  Locations are relative to home, and fit in 16 bits each.
+     * @param fromX Start X.
+     * @param fromY Start Y.
+     * @param toX Target X.
+     * @param toY Target Y.
+     * @return The key.
      */
-    final Comparator<Point> CURR_DISTANCE_ORDER = new Comparator<Point>() {
-        @Override
-        public int compare(Point e1, Point e2) {
-            int coste1 = (Math.abs(e1.x - currentPoint.x) + Math.abs(e1.y - currentPoint.y));
-            int coste2 = (Math.abs(e2.x - currentPoint.x) + Math.abs(e2.y - currentPoint.y));
-            return (coste1 - coste2);
-        }
-    };
+    private static long routeKey(int fromX, int fromY, int toX, int toY) {
+        return ((long)(fromX & 0xFFFF) << 48) | ((long)(fromY & 0xFFFF) << 32) | ((long)(toX & 0xFFFF) << 16) | (toY & 0xFFFF);
+    }
     
     /**
-     * Comparator to calculate the distance between two {@link Move} objects.
+     * Check that a cached route from my current location doesn't cross any spot found blocked since it was found.
+     * <p>
+     * If no spot at all has been found blocked since then, there is nothing to check.  Otherwise the route is walked again.
+     * @param cached Entry of the cached route in the {@link RouteCache}.
+     * @return True if the route can still be walked.
      */
-    final Comparator<Move> MOVE_ORDER = new Comparator<Move>() {
-        @Override
-        public int compare(Move e1, Move e2) {
-            return (e1.getTotalCost() - e2.getTotalCost());
+    private boolean isStillClear(int cached) {
+        if (routeCache.blockedVersion(cached) == knowledge.blockedVersion)
+            return true;
+        int[] steps = routeCache.steps(cached);
+        int x = currentPoint.x, y = currentPoint.y;
+        for (int i = routeCache.length(cached) - 1; i >= 0; i--){
+            x += STEP_X[steps[i]];
+            y += STEP_Y[steps[i]];
+            int cell = knowledge.cell(x, y);
+            if (cell < 0 || !knowledge.isTraversable(cell))
+                return false;
         }
-    };
+        routeCache.setBlockedVersion(cached, knowledge.blockedVersion);
+        return true;
+    }
 }
 
 /**
- * AntKnowledge class holds the minimal important data to be transfered between ants during communication.
- * 
- * This class implements {@link Seriablizable} so it can easily be transfered as a byte[].
+ * RouteCache class keeps an ant's most recently used routes, by start and target location packed into a long key, with the blocked version
+ * of the ant's knowledge when each was last known to be clear.
+ * <p>
+ * The entries are a fixed set of parallel arrays, found through an open addressed table of keys at least twice their number, so looking a route up
+ * doesn't box its key.  When the cache is full, the least recently used entry is replaced, and its step array is reused for the new route,
+ * so once the arrays are big enough for the ant's routes, caching one doesn't allocate.
  * 
  * @author Jesse Smith (jesse@steelcorelabs.com)
  */
-class AntKnowledge implements Serializable {
-    
-    Spot[][] grid;
-    int age = 0;
-    int year = 0; //The current year of this colony
-    int role;
-    int id;
+class RouteCache {
+    //Key of each entry, its steps in the same order as a {@link Route} keeps them, with the first step to take at the end, and how many there are.
+    private final long[] keys;
+    private final int[][] steps;
+    private final int[] lengths;
+    //{@link AntKnowledge#blockedVersion} when each entry's route was last known to be clear.
+    private final int[] blockedVersions;
+    //When each entry was last used, as a count of uses, and the count so far.
+    private final long[] used;
+    private long uses = 0;
+    //Number of entries in use.
+    private int size = 0;
+    //Open addressed table of keys, with linear probing, and the entry for each slot, or -1 if the slot is empty.
+    private final long[] tableKeys;
+    private final int[] tableEntries;
+    private final int mask;
     
     /**
-     * Initialize the {@link AntKnolwedge} object with a role and a gridsize.
-     * @param p_role Role of this ant.
-     * @param gridSize Grid size for the grid of this ant.
+     * Initialize an empty {@link RouteCache}.
+     * @param capacity Most routes to keep.
      */
-    public AntKnowledge(int p_role, int gridSize) {
-        age = 0;
-        year = 0;
-        role = p_role;
-        id = this.hashCode();
-        grid = new Spot[gridSize][gridSize];
-        for (int x=0; x < gridSize; x++)
-            for (int y=0; y < gridSize; y++)
-                grid[x][y] = new Spot();
+    public RouteCache(int capacity) {
+        keys = new long[capacity];
+        steps = new int[capacity][];
+        lengths = new int[capacity];
+        blockedVersions = new int[capacity];
+        used = new long[capacity];
+        int slots = Integer.highestOneBit(Math.max(capacity, 1)) * 4;
+        tableKeys = new long[slots];
+        tableEntries = new int[slots];
+        Arrays.fill(tableEntries, -1);
+        mask = slots - 1;
     }
     
     /**
-     * Initialize the {@link AntKnolwedge} object with a role.
-     * <p>
-     * This constructor is used to create a temporary AntKnowledge that doesn't have a grid.
-     * @param p_role Role of this ant.
-     * @param gridSize Grid is null.
+     * Find a route, and mark it as the most recently used.
+     * @param key The route's key.
+     * @return The route's entry, or -1 if it isn't cached.
      */
-    public AntKnowledge(int p_role) {
-        age = -1;
-        year = -1;
-        role = p_role;
-        id = -1;
-        grid = null;
+    public int get(long key) {
+        int slot = this.slotOf(key);
+        if (slot < 0)
+            return -1;
+        int entry = tableEntries[slot];
+        used[entry] = ++uses;
+        return entry;
     }
-}
-
-/**
- * Spot class represents the information about a single spot {@link Tile} on the map.
- * @author Jesse Smith (jesse@steelcorelabs.com)
- */
-class Spot implements Serializable {
+    
     /**
-     * Constructor for Spot objects.
+     * Steps of a cached route.  Only the first {@link #length} of them are the route's.
+     * @param entry The route's entry.
+     * @return The steps, with the first step to take at the end.
      */
-    public Spot () {
-        food = -1; //If I haven't learned about this spot yet, it has -1 food.
-        traversable = false; //Can I walk on this spot?
-        yearViewed = -1;  //The day at which this spot was last analyzed
-        yearVisited = -1; //The day at which this spot was last visited (to check for food)
+    public int[] steps(int entry) {
+        return steps[entry];
     }
-        
-    int food;
-    boolean traversable;
-    int yearViewed;
-    int yearVisited;
     
     /**
-     * Copy the visit data for another {@link Spot}.
-     * <p>
-     * Internally, update the year visited for this spot to that of the source Spot.
-     * @param s Source {@link Spot}.
+     * Number of steps in a cached route.
+     * @param entry The route's entry.
+     * @return The number of steps.
      */
-    public void copyVisitData(Spot s) {
-        this.food = s.food;
-        this.yearVisited = s.yearVisited;
+    public int length(int entry) {
+        return lengths[entry];
     }
     
     /**
-     * Copy the viewed data for another {@link Spot}.
-     * <p>
-     * Internally, update the year viewed for this spot to that of the source Spot.
-     * @param s Source {@link Spot}
+     * Blocked version of the knowledge when a cached route was last known to be clear.
+     * @param entry The route's entry.
+     * @return The blocked version.
      */
-    public void copyViewData(Spot s) {
-        this.traversable = s.traversable;
-        this.yearViewed = s.yearViewed;
+    public int blockedVersion(int entry) {
+        return blockedVersions[entry];
     }
     
     /**
-     * Getter for the food amount.
-     * @return amount of food.
+     * Set the blocked version of the knowledge when a cached route was last known to be clear.
+     * @param entry The route's entry.
+     * @param blockedVersion The blocked version.
      */
-    public int getFood() {
-        return food;
+    public void setBlockedVersion(int entry, int blockedVersion) {
+        blockedVersions[entry] = blockedVersion;
     }
-
+    
     /**
-     * Setter for food, and the year it was originally learned.
-     * @param food The amount of food.
-     * @param year The year it was learned.
+     * Cache a route, replacing the least recently used one if the cache is full.
+     * @param key The route's key.
+     * @param route The route, whose steps are copied.
+     * @param blockedVersion Blocked version of the knowledge the route was found with.
      */
-    public void setFood(int food, int year) {
-        this.food = food;
-        yearVisited = year;
+    public void put(long key, Route route, int blockedVersion) {
+        int slot = this.slotOf(key), entry;
+        if (slot >= 0)
+            entry = tableEntries[slot];
+        else{
+            if (size < keys.length)
+                entry = size++;
+            else{
+                entry = 0;
+                for (int i = 1; i < size; i++)
+                    if (used[i] < used[entry])
+                        entry = i;
+                this.removeSlot(this.slotOf(keys[entry]));
+            }
+            keys[entry] = key;
+            this.insertSlot(key, entry);
+        }
+        steps[entry] = route.copySteps(steps[entry]);
+        lengths[entry] = route.size();
+        blockedVersions[entry] = blockedVersion;
+        used[entry] = ++uses;
     }
     
     /**
-     * Setter for traversable variable, and the year it was originally learned.
-     * @param isTraversable Whether the spot is traversable.
-     * @param year The year it was learned.
+     * Drop a route from the cache.  Its entry is moved to the end, and its step array kept for the next route cached.
+     * @param key The route's key.
      */
-    public void setTraversable(boolean isTraversable, int year){
-        this.traversable = isTraversable;
-        yearViewed = year;
+    public void remove(long key) {
+        int slot = this.slotOf(key);
+        if (slot < 0)
+            return;
+        int entry = tableEntries[slot], last = --size;
+        this.removeSlot(slot);
+        if (entry != last){
+            //Move the last entry into the gap, and swap the step arrays so neither is lost.
+            int[] spare = steps[entry];
+            keys[entry] = keys[last];
+            steps[entry] = steps[last];
+            steps[last] = spare;
+            lengths[entry] = lengths[last];
+            blockedVersions[entry] = blockedVersions[last];
+            used[entry] = used[last];
+            tableEntries[this.slotOf(keys[entry])] = entry;
+        }
     }
-}
-
-//A move is a point, and the parent point, and the est_cost to get to the target from this point.
-/**
- * Class representing a Move.
- * <p>
- * A {@link Move} consists of a {@link Point} movePoint, a {@link Point} parentPoint, 
- * an estimated cost for the movePoint, and an estimated cost for the parentPoint.
- * <p>
- * This class is helpful for the implementation of the A* routing algorithm.
- * @author Jesse Smith (jesse@steelcorelabs.com)
- */
-class Move {
-    int destCost = -1, sourceCost = -1;
-    Point movePoint = null;
-    Move parent = null;
     
     /**
-     * Constructor of {@link Move} class.
-     * Sets initial parameters.
-     * @param p_sourceCost Cost to get from starting point to this parentPoint.
-     * @param p_destCost Estimated cost to get from movePoint to final target point.
-     * @param p_movePoint Core point for this Move.
-     * @param p_parent Parent point that comes before the current movePoint in the route.
+     * Find the table slot holding a key.
+     * @param key The key.
+     * @return The slot, or -1 if the key isn't in the table.
      */
-    public Move(int p_sourceCost, int p_destCost, Point p_movePoint, Move p_parent){
-        sourceCost = p_sourceCost;
-        destCost = p_destCost;
-        parent = p_parent;
-        movePoint = p_movePoint;
+    private int slotOf(long key) {
+        for (int slot = hash(key) & mask; tableEntries[slot] >= 0; slot = (slot + 1) & mask)
+            if (tableKeys[slot] == key)
+                return slot;
+        return -1;
     }
     
     /**
-     * Constructor for {@link Move} that doesn't include costs.
-     * @param p_movePoint Core point for this Move.
+     * Put a key in the first empty slot from its hash on.
+     * @param key The key.
+     * @param entry Its entry.
      */
-    public Move(Point p_movePoint){
-        movePoint = p_movePoint;
+    private void insertSlot(long key, int entry) {
+        int slot = hash(key) & mask;
+        while (tableEntries[slot] >= 0)
+            slot = (slot + 1) & mask;
+        tableKeys[slot] = key;
+        tableEntries[slot] = entry;
     }
     
     /**
-     * Constructor for {@link Move} that doesn't include costs.
-     * @param p_movePoint Core point for this Move.
-     * @param p_parent Parent point that comes before the current movePoint in the route.
+     * Empty a slot, and move back any keys after it that probed past it, so every key can still be found without tombstones.
+     * @param slot The slot.
      */
-    public Move(Point p_movePoint, Move p_parent){
-        parent = p_parent;
-        movePoint = p_movePoint;
+    private void removeSlot(int slot) {
+        tableEntries[slot] = -1;
+        for (int next = (slot + 1) & mask; tableEntries[next] >= 0; next = (next + 1) & mask){
+            int home = hash(tableKeys[next]) & mask;
+            //Leave the key where it is if its home is after the gap, going around from the gap to where the key sits.
+            if (((next - home) & mask) < ((next - slot) & mask))
+                continue;
+            tableKeys[slot] = tableKeys[next];
+            tableEntries[slot] = tableEntries[next];
+            tableEntries[next] = -1;
+            slot = next;
+        }
     }
-        
+    
+    /**
+     * Spread the bits of a key over an int.
+     * @param key The key.
+     * @return The hash.
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32);
+    }
+}
+
+/**
+ * FoodDispatcher class is kept by the Traffic Cop to send the workers it meets at home for food.
+ * <p>
+ * The known food waits in a priority queue, nearest to home by walking distance first.  A worker that needs food is sent for the nearest
+ * unit no other worker has been sent for, and holds a reservation on it until it comes back carrying food, finds the spot empty, or stays
+ * away too long.  So food reserved by one worker isn't handed to another, and only the food left over counts as available.
+ * <p>
+ * The queue is built once from the food index, and only built again when the food on the Traffic Cop's map changes by more than its own bookkeeping,
+ * or a spot becomes or stops being traversable, which can change how far the food is.  Spots seen again with nothing new don't count.
+ * Food is kept by its location relative to home, packed into an int, since cells are renumbered when the map grows.
+ * 
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+class FoodDispatcher {
+    /** Years, besides the trip there and back, a worker can be away before its reservation is dropped. */
+    static final int RESERVATION_SLACK = 50;
+    /** Years an assignment is sent for, long enough for a worker at home to hear it before it leaves. */
+    static final int ASSIGNMENT_YEARS = 2;
+    
+    //Food with units that aren't reserved, as the walking distance from home above the packed location.  Spots that ran out are skipped when taken off.
+    private final PriorityQueue<Long> queue = new PriorityQueue<Long>();
+    //Number of units reserved at each packed location.
+    private final HashMap<Integer, Integer> reserved = new HashMap<Integer, Integer>();
+    //The reservation held by each worker, by id.
+    private final HashMap<Integer, Reservation> reservations = new HashMap<Integer, Reservation>();
+    //Workers whose assignments are still being sent.
+    private final ArrayList<Integer> pending = new ArrayList<Integer>();
+    //{@link AntKnowledge#foodVersion} and {@link AntKnowledge#traversableVersion} the queue was built for.
+    private int queueFoodVersion = -1, queueTraversableVersion = -1;
+    //Year the reservations were last checked for ones that ran out of time.
+    private int sweptYear = -1;
+    
+    /**
+     * Pack a location relative to home into an int.
+     * @param x X of the location.
+     * @param y Y of the location.
+     * @return The packed location.
+     */
+    static int pack(int x, int y) {
+        return (x << 16) | (y & 0xFFFF);
+    }
+    
+    /**
+     * X of a packed location.
+     * @param location The packed location.
+     * @return X relative to home.
+     */
+    static int xOf(int location) {
+        return location >> 16;
+    }
+    
+    /**
+     * Y of a packed location.
+     * @param location The packed location.
+     * @return Y relative to home.
+     */
+    static int yOf(int location) {
+        return (short) location;
+    }
+    
+    /**
+     * Hear what a worker at home is doing.
+     * <p>
+     * If the worker is back from the food it was sent for, carrying some or having found the spot empty, the food left there is updated
+     * and its reservation released.  Only a worker that stood on the spot knows how much is left, so the food is left alone for one that
+     * gave up on the spot without going there, because it doesn't know the spot, or heard from a friend that it is empty.
+     * A worker that isn't working on its reservation anymore, or never heard about it, loses it too.
+     * Then a worker without a reservation is sent for the nearest available food.
+     * @param knowledge Knowledge of the Traffic Cop.
+     * @param message The worker's {@link AntMessage}.
+     */
+    public void hear(AntKnowledge knowledge, AntMessage message) {
+        this.sweep(knowledge.year);
+        Reservation reservation = reservations.get(message.id);
+        if (reservation != null){
+            if (message.hasTarget && pack(message.targetX, message.targetY) == reservation.location){
+                reservation.acknowledged = true;
+                //Carrying food home, or not going since it believes there is none, or doesn't know the spot at all (-1).
+                if (message.holdingFood || message.targetFood <= 0){
+                    int cell = knowledge.cell(xOf(reservation.location), yOf(reservation.location));
+                    if (cell >= 0 && message.atTarget){
+                        //Trust whichever of us believes there is less food left.
+                        int food = Math.min(knowledge.getFood(cell) - (message.holdingFood ? 1 : 0), Math.max(message.targetFood, 0));
+                        this.setFood(knowledge, cell, Math.max(food, 0));
+                    }
+                    this.release(knowledge, message.id);
+                }
+            }
+            else if (reservation.acknowledged || knowledge.year - reservation.year > ASSIGNMENT_YEARS)
+                this.release(knowledge, message.id);
+        }
+        if (!reservations.containsKey(message.id))
+            this.assign(knowledge, message.id);
+    }
+    
+    /**
+     * The assignments to send, for the workers sent for food in the last few years that haven't said they heard.
+     * @param year The current year.
+     * @return The assignments as the worker's id and the food's location relative to home, three ints each, or null if there are none.
+     */
+    public int[] assignments(int year) {
+        for (Iterator<Integer> it = pending.iterator(); it.hasNext(); ){
+            Reservation reservation = reservations.get(it.next());
+            if (reservation == null || reservation.acknowledged || year - reservation.year >= ASSIGNMENT_YEARS)
+                it.remove();
+        }
+        if (pending.isEmpty())
+            return null;
+        int[] assignments = new int[pending.size() * 3];
+        int i = 0;
+        for (int workerId : pending){
+            int location = reservations.get(workerId).location;
+            assignments[i++] = workerId;
+            assignments[i++] = xOf(location);
+            assignments[i++] = yOf(location);
+        }
+        return assignments;
+    }
+    
+    /**
+     * Number of workers holding a reservation.
+     * @return The number of reservations.
+     */
+    public int size() {
+        return reservations.size();
+    }
+    
+    /**
+     * Send a worker for the nearest food that has a unit nobody else was sent for.
+     * @param knowledge Knowledge of the Traffic Cop.
+     * @param workerId Id of the worker.
+     */
+    private void assign(AntKnowledge knowledge, int workerId) {
+        if (queueFoodVersion != knowledge.foodVersion || queueTraversableVersion != knowledge.traversableVersion)
+            this.rebuild(knowledge);
+        while (!queue.isEmpty()){
+            long entry = queue.poll();
+            int location = (int) entry;
+            int available = this.available(knowledge, location);
+            if (available <= 0)
+                continue;
+            reservations.put(workerId, new Reservation(location, (int) (entry >>> 32), knowledge.year));
+            reserved.put(location, this.reservedAt(location) + 1);
+            //A worker sent again before it heard the last one is only listed once, with its new food.
+            if (!pending.contains(workerId))
+                pending.add(workerId);
+            if (available > 1)
+                queue.add(entry);
+            if (AntLogger.isEnabled())
+                AntLogger.infoLog("TC sending worker %d to food at %d,%d", workerId, xOf(location), yOf(location));
+            return;
+        }
+    }
+    
+    /**
+     * Release a worker's reservation, putting its food back in the queue if that makes some available again.
+     * @param knowledge Knowledge of the Traffic Cop.
+     * @param workerId Id of the worker.
+     */
+    private void release(AntKnowledge knowledge, int workerId) {
+        Reservation reservation = reservations.remove(workerId);
+        int location = reservation.location, count = this.reservedAt(location) - 1;
+        boolean wasAvailable = this.available(knowledge, location) > 0;
+        if (count > 0)
+            reserved.put(location, count);
+        else
+            reserved.remove(location);
+        if (!wasAvailable && this.available(knowledge, location) > 0)
+            queue.add(((long) reservation.distance << 32) | (location & 0xFFFFFFFFL));
+    }
+    
+    /**
+     * Release the reservations of workers that have been away too long, at most once a year.
+     * @param year The current year.
+     */
+    private void sweep(int year) {
+        if (year == sweptYear)
+            return;
+        sweptYear = year;
+        for (Iterator<Map.Entry<Integer, Reservation>> it = reservations.entrySet().iterator(); it.hasNext(); ){
+            Reservation reservation = it.next().getValue();
+            if (year - reservation.year > 2 * reservation.distance + RESERVATION_SLACK){
+                it.remove();
+                int count = this.reservedAt(reservation.location) - 1;
+                if (count > 0)
+                    reserved.put(reservation.location, count);
+                else
+                    reserved.remove(reservation.location);
+                //The queue may be missing this food now, so build it again.
+                queueFoodVersion = -1;
+            }
+        }
+    }
+    
+    /**
+     * Build the queue from the food index, leaving out food at home, food that can't be reached, and food that is all reserved.
+     * @param knowledge Knowledge of the Traffic Cop.
+     */
+    private void rebuild(AntKnowledge knowledge) {
+        queue.clear();
+        int home = knowledge.cell(0, 0);
+        for (int cell = knowledge.foodIndex.nextMember(0); cell >= 0; cell = knowledge.foodIndex.nextMember(cell + 1)){
+            int distance = knowledge.homeDistance(cell);
+            if (cell == home || distance < 0)
+                continue;
+            int location = pack(knowledge.xOf(cell), knowledge.yOf(cell));
+            if (knowledge.getFood(cell) - this.reservedAt(location) > 0)
+                queue.add(((long) distance << 32) | (location & 0xFFFFFFFFL));
+        }
+        queueFoodVersion = knowledge.foodVersion;
+        queueTraversableVersion = knowledge.traversableVersion;
+    }
+    
+    /**
+     * Set the food on a spot, without building the queue again for it.
+     * @param knowledge Knowledge of the Traffic Cop.
+     * @param cell The spot.
+     * @param food Amount of food left.
+     */
+    private void setFood(AntKnowledge knowledge, int cell, int food) {
+        boolean current = (queueFoodVersion == knowledge.foodVersion);
+        knowledge.setFood(cell, food, knowledge.year);
+        //Only my own bookkeeping changed, and taking food off the queue is checked when it is polled.
+        if (current)
+            queueFoodVersion = knowledge.foodVersion;
+    }
+    
+    /**
+     * Units of food at a location that nobody was sent for.
+     * @param knowledge Knowledge of the Traffic Cop.
+     * @param location The packed location.
+     * @return The available food, 0 or less if there is none.
+     */
+    private int available(AntKnowledge knowledge, int location) {
+        int cell = knowledge.cell(xOf(location), yOf(location));
+        return (cell < 0) ? 0 : knowledge.getFood(cell) - this.reservedAt(location);
+    }
+    
+    /**
+     * Units of food reserved at a location.
+     * @param location The packed location.
+     * @return The number of reservations.
+     */
+    private int reservedAt(int location) {
+        Integer count = reserved.get(location);
+        return (count == null) ? 0 : count;
+    }
+}
+
+/**
+ * Reservation class is a unit of food a worker was sent for by the {@link FoodDispatcher}.
+ * 
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+class Reservation {
+    //Location of the food relative to home, packed by {@link FoodDispatcher#pack}, and its walking distance from home.
+    final int location, distance;
+    //Year the worker was sent.
+    final int year;
+    //The worker said it is going for this food, so the assignment needn't be sent again.
+    boolean acknowledged = false;
+    
+    /**
+     * Initialize the {@link Reservation}.
+     * @param p_location Packed location of the food.
+     * @param p_distance Walking distance of the food from home.
+     * @param p_year Year the worker was sent.
+     */
+    public Reservation(int p_location, int p_distance, int p_year) {
+        location = p_location;
+        distance = p_distance;
+        year = p_year;
+    }
+}
+
+/**
+ * Route class holds the steps of an ant's route, as the ordinal of the {@link Direction} of each step.
+ * <p>
+ * Steps are added from the target back to the start, and taken from the end, so building and following a route never allocates once the array is big enough.
+ * 
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+class Route {
+    //Steps, with the next one to take at the end.
+    private int[] steps = new int[32];
+    private int size = 0;
+    
+    /**
+     * Is there any step left to take.
+     * @return True if the route is empty.
+     */
+    public boolean isEmpty() {
+        return (size == 0);
+    }
+    
+    /**
+     * Number of steps left to take.
+     * @return Number of steps.
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Remove every step.
+     */
+    public void clear() {
+        size = 0;
+    }
+    
+    /**
+     * Add a step before the ones already on the route.
+     * @param direction Ordinal of the {@link Direction} of the step.
+     */
+    public void add(int direction) {
+        if (size == steps.length)
+            steps = Arrays.copyOf(steps, size * 2);
+        steps[size++] = direction;
+    }
+    
+    /**
+     * Copy the steps of the route, in the order they are kept.
+     * @return The steps, with the first step to take at the end.
+     */
+    public int[] toSteps() {
+        return Arrays.copyOf(steps, size);
+    }
+    
+    /**
+     * Copy the steps of the route, in the order they are kept, into an array if it is big enough.
+     * @param into Array to copy into, or null.
+     * @return The array the steps were copied into, a new one if into was too small.  Only the first {@link #size} of them are the route's.
+     */
+    public int[] copySteps(int[] into) {
+        if (into == null || into.length < size)
+            into = new int[Math.max(size, steps.length)];
+        System.arraycopy(steps, 0, into, 0, size);
+        return into;
+    }
+    
+    /**
+     * Replace the route with steps copied from {@link #copySteps}.
+     * @param p_steps The steps, with the first step to take at the end.
+     * @param count Number of steps.
+     */
+    public void load(int[] p_steps, int count) {
+        if (steps.length < count)
+            steps = new int[p_steps.length];
+        System.arraycopy(p_steps, 0, steps, 0, count);
+        size = count;
+    }
+    
+    /**
+     * Take the next step off the route.
+     * @return Ordinal of the {@link Direction} of the step, or -1 if the route is empty.
+     */
+    public int pollNext() {
+        return (size == 0) ? -1 : steps[--size];
+    }
+    
+    /**
+     * Override toString for Route objects.
+     * @return The steps, in the order they will be taken.
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int i = size - 1; i >= 0; i--)
+            text.append(AntBrain.DIRECTIONS[steps[i]]).append(i > 0 ? " - " : "");
+        return text.toString();
+    }
+}
+
+/**
+ * AntKnowledge class holds the minimal important data to be transfered between ants during communication.
+ * <p>
+ * The map is addressed in coordinates relative to home, which is (0, 0).  It covers a square span of spots around home, a power of two wide,
+ * made of {@link Chunk}s of 16 x 16 spots.  Chunks are only allocated once something is learned about one of their spots,
+ * so memory follows the area the ant knows about rather than the size of the span.
+ * <p>
+ * Each spot is given a packed cell number, chunk * 256 + spot within the chunk, where chunks are numbered row by row across the span.
+ * Looking up a cell is then just a shift and a mask.  See {@link Chunk#cellAt} for the packing.
+ * <p>
+ * The span doubles when the ant needs a spot outside it, up to the size limit given at construction.  Growing renumbers the cells,
+ * so cells should not be held across a call that can grow the map.
+ * Spots are read and written through the accessor methods here.
+ * <p>
+ * Every change to the grid bumps the knowledge version and is remembered, so the next {@link AntMessage} only needs to carry the changed spots.
+ * 
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+class AntKnowledge {
+    
+    /** Default width of the map when an ant is born, and the most it can grow to. */
+    static final int INITIAL_SPAN = 32, MAX_SPAN = 1024;
+    /** Landmarks kept besides home for {@link #landmarkDistance}. */
+    static final int LANDMARKS = 3;
+    
+    //Width of the map, always a power of two.
+    int span;
+    //Half the span: the map covers -half to half - 1 in each direction.
+    private int half;
+    //The span may grow up to this width.
+    int maxSpan;
+    int age = 0;
+    int year = 0; //The current year of this colony
+    int role;
+    int id;
+    
+    //The map, as a square of chunks, null until something is learned about one of its spots.
+    private Chunk[] chunks;
+    //Chunks per side of the span, and log2 of it.
+    private int chunksPerSide, chunksShift;
+    
+    /** Index of the cells known to have food, kept up to date by {@link #setFood}. */
+    CellIndex foodIndex;
+    /** Scanner's exploration frontier: unexplored cells it still plans to visit.  Cells leave as soon as they are visited or found blocked. */
+    CellIndex frontier = null;
+    
+    //Version of this knowledge, bumped every time a spot on the grid changes.
+    int version = 0;
+    //Bumped every time the amount of food on a spot changes.
+    int foodVersion = 0;
+    //Bumped every time a spot becomes, or stops being, traversable.
+    int traversableVersion = 0;
+    //Bumped every time a spot stops being traversable.
+    int blockedVersion = 0;
+    //traversableVersion the distance field to home was built for, and a number for each build, so chunks can tell if their distances are current.
+    private int homeFieldVersion = -1, homeFieldBuild = 0;
+    //Queue of cells for building the distance field to home, reused between builds.
+    private int[] homeFieldQueue = new int[256];
+    //The spot farthest from home found by the last build of the distance field to home.
+    private int homeFieldFarthest = -1;
+    //traversableVersion the landmark distance tables were built for, and a number for each build.  See {@link #landmarkDistance}.
+    private int landmarkVersion = -1, landmarkBuild = 0;
+    //Every change up to and including this version has been written into a message.
+    int sentThrough = 0;
+    //Cells changed since the last message.  Each chunk flags its changed spots, so each is only listed once.
+    private int[] changedSpots = new int[64];
+    private int numChanged = 0;
+    //Scratch space for writing messages, reused so sending doesn't allocate once the arrays are big enough.  See {@link #pickWithinBudget}.
+    //The spare changed list is swapped with changedSpots when the chosen spots are moved to the front.
+    private int[] spareSpots = new int[64], budgetChosen = new int[64];
+    private long[] budgetKeys = new long[64];
+    private boolean[] budgetTaken = new boolean[64];
+    //Stamp of the chunks that already have a group in the message being budgeted, and the stamp for the current message.
+    private int[] groupedStamp = new int[0];
+    private int groupedGeneration = 0;
+    //Digest matches per chunk, and the chunks every digest agrees with.  See {@link #agreedChunks}.
+    private int[] chunkMatches = new int[0];
+    private boolean[] agreed = new boolean[0];
+    
+    /**
+     * Initialize the {@link AntKnowledge} object with a role and the size limits of the map.
+     * @param p_role Role of this ant.
+     * @param initialSpan Width of the map to start with.  A power of two, at least 32.
+     * @param p_maxSpan Width the map may grow to.  A power of two, at least initialSpan, and at most 32768.
+     */
+    public AntKnowledge(int p_role, int initialSpan, int p_maxSpan) {
+        if (Integer.bitCount(initialSpan) != 1 || Integer.bitCount(p_maxSpan) != 1 
+                || initialSpan < 2 * Chunk.SIZE || p_maxSpan < initialSpan || p_maxSpan > (1 << 15))
+            throw new IllegalArgumentException("Map spans must be powers of two from 32 to 32768, got " + initialSpan + " and " + p_maxSpan);
+        age = 0;
+        year = 0;
+        role = p_role;
+        id = this.hashCode();
+        maxSpan = p_maxSpan;
+        setSpan(initialSpan);
+        chunks = new Chunk[chunksPerSide * chunksPerSide];
+        foodIndex = new CellIndex(span);
+    }
+    
+    /**
+     * Set the span, and the values derived from it.
+     * @param p_span New span.
+     */
+    private void setSpan(int p_span) {
+        span = p_span;
+        half = span >> 1;
+        chunksPerSide = span >> Chunk.SHIFT;
+        chunksShift = Integer.numberOfTrailingZeros(chunksPerSide);
+    }
+    
+    /**
+     * Pack a location into a cell.
+     * @param x X location, relative to home.
+     * @param y Y location, relative to home.
+     * @return The cell, or -1 if the location is outside the current span.
+     */
+    public int cell(int x, int y) {
+        if (!onGrid(x, y))
+            return -1;
+        return Chunk.cellAt(x + half, y + half, chunksShift);
+    }
+    
+    /**
+     * X location of a cell.
+     * @param cell The cell.
+     * @return X location, relative to home.
+     */
+    public int xOf(int cell) {
+        return Chunk.columnOf(cell, chunksShift) - half;
+    }
+    
+    /**
+     * Y location of a cell.
+     * @param cell The cell.
+     * @return Y location, relative to home.
+     */
+    public int yOf(int cell) {
+        return Chunk.rowOf(cell, chunksShift) - half;
+    }
+    
+    /**
+     * The neighboring cell one step in X.
+     * @param cell The cell.
+     * @param dx 1 for east, -1 for west.
+     * @return The neighbor, or -1 if it is outside the span.
+     */
+    public int stepX(int cell, int dx) {
+        int column = Chunk.columnOf(cell, chunksShift) + dx;
+        if (column < 0 || column >= span)
+            return -1;
+        return Chunk.cellAt(column, Chunk.rowOf(cell, chunksShift), chunksShift);
+    }
+    
+    /**
+     * The neighboring cell one step in Y.
+     * @param cell The cell.
+     * @param dy 1 for north, -1 for south.
+     * @return The neighbor, or -1 if it is outside the span.
+     */
+    public int stepY(int cell, int dy) {
+        int row = Chunk.rowOf(cell, chunksShift) + dy;
+        if (row < 0 || row >= span)
+            return -1;
+        return Chunk.cellAt(Chunk.columnOf(cell, chunksShift), row, chunksShift);
+    }
+    
+    /**
+     * Is this location inside the current span of the grid.
+     * @param x X location, relative to home.
+     * @param y Y location, relative to home.
+     * @return True if the location has a cell.
+     */
+    public boolean onGrid(int x, int y) {
+        return (x >= -half && y >= -half && x < half && y < half);
+    }
+    
+    /**
+     * Is this location inside the largest span the grid may grow to.
+     * @param x X location, relative to home.
+     * @param y Y location, relative to home.
+     * @return True if the location can be given a cell.
+     */
+    public boolean inBounds(int x, int y) {
+        int maxHalf = maxSpan >> 1;
+        return (x >= -maxHalf && y >= -maxHalf && x < maxHalf && y < maxHalf);
+    }
+    
+    /**
+     * Grow the span until it holds this location.
+     * @param x X location, relative to home.
+     * @param y Y location, relative to home.
+     * @return True if the location is now on the grid, false if it is past the size limit.
+     */
+    public boolean growToFit(int x, int y) {
+        if (!inBounds(x, y))
+            return false;
+        while (!onGrid(x, y))
+            grow();
+        return true;
+    }
+    
+    /**
+     * Find my cell for a cell packed by another ant, whose span may be different, growing my span if needed.
+     * @param otherCell Cell packed in the other ant's span.
+     * @param otherSpan The other ant's span.
+     * @return My cell for the same location, or -1 if it is past my size limit.
+     */
+    public int fromSpan(int otherCell, int otherSpan) {
+        if (otherSpan == span)
+            return otherCell;
+        int otherShift = Integer.numberOfTrailingZeros(otherSpan >> Chunk.SHIFT), otherHalf = otherSpan >> 1;
+        int x = Chunk.columnOf(otherCell, otherShift) - otherHalf, y = Chunk.rowOf(otherCell, otherShift) - otherHalf;
+        if (!growToFit(x, y))
+            return -1;
+        return cell(x, y);
+    }
+    
+    /**
+     * Number of steps from a cell to home, walking only on spots known to be traversable.
+     * <p>
+     * The distances come from a breadth first search out from home over the whole known map.  It is only redone
+     * when a spot has become or stopped being traversable since the last search, so between changes every lookup is just an array read.
+     * @param cell The cell.
+     * @return Number of steps, or -1 if home can't be reached from the cell over known spots.
+     */
+    public int homeDistance(int cell) {
+        if (homeFieldVersion != traversableVersion)
+            buildHomeField();
+        Chunk chunk = chunkOf(cell);
+        if (chunk == null || chunk.homeFieldBuild != homeFieldBuild)
+            return -1;
+        return chunk.homeDistance[spotOf(cell)];
+    }
+    
+    /**
+     * Breadth first search out from home over the known traversable spots, writing each spot's distance into its chunk.
+     * <p>
+     * Home is always included, since ants can always walk onto it.
+     */
+    private void buildHomeField() {
+        homeFieldVersion = traversableVersion;
+        homeFieldBuild++;
+        int head = 0, tail = 0, home = cell(0, 0);
+        setHomeDistance(home, 0);
+        homeFieldQueue[tail++] = home;
+        while (head < tail){
+            int current = homeFieldQueue[head++];
+            homeFieldFarthest = current;
+            int distance = chunkOf(current).homeDistance[spotOf(current)] + 1;
+            for (int i = 0; i < 4; i++){
+                int neighbor = (i < 2) ? stepX(current, (i == 0) ? 1 : -1) : stepY(current, (i == 2) ? 1 : -1);
+                if (neighbor < 0 || !isTraversable(neighbor))
+                    continue;
+                Chunk chunk = chunkOf(neighbor);
+                if (chunk.homeFieldBuild == homeFieldBuild && chunk.homeDistance[spotOf(neighbor)] >= 0)
+                    continue;
+                setHomeDistance(neighbor, distance);
+                if (tail == homeFieldQueue.length)
+                    homeFieldQueue = Arrays.copyOf(homeFieldQueue, tail * 2);
+                homeFieldQueue[tail++] = neighbor;
+            }
+        }
+    }
+    
+    /**
+     * Number of steps from a cell to a landmark, walking only on spots known to be traversable, for the ALT estimate in {@link RouteSearch#searchLandmarks}.
+     * <p>
+     * Landmark 0 is home, using {@link #homeDistance}.  The others are picked far apart: the spot farthest from home,
+     * then each time the spot farthest from its closest landmark so far.  Each has a breadth first search table kept in the chunks, like the one to home,
+     * and they are all redone together when a spot has become or stopped being traversable since the last time they were asked for.
+     * @param cell The cell.
+     * @param landmark The landmark, 0 to {@link #LANDMARKS}.
+     * @return Number of steps, or -1 if the landmark can't be reached from the cell over known spots.
+     */
+    public int landmarkDistance(int cell, int landmark) {
+        if (landmark == 0)
+            return homeDistance(cell);
+        if (landmarkVersion != traversableVersion)
+            buildLandmarks();
+        Chunk chunk = chunkOf(cell);
+        if (chunk == null || chunk.landmarkBuild != landmarkBuild)
+            return -1;
+        return chunk.landmarkDistance[(landmark - 1) * Chunk.CELLS + spotOf(cell)];
+    }
+    
+    /**
+     * Pick the landmarks and build their distance tables.
+     */
+    private void buildLandmarks() {
+        if (homeFieldVersion != traversableVersion)
+            buildHomeField();
+        landmarkVersion = traversableVersion;
+        landmarkBuild++;
+        int next = homeFieldFarthest;
+        for (int landmark = 1; landmark <= LANDMARKS && next >= 0; landmark++)
+            next = buildLandmark(next, landmark);
+    }
+    
+    /**
+     * Breadth first search out from one landmark over the known traversable spots, writing each spot's distance into its chunk.
+     * @param from The landmark's cell.
+     * @param landmark Number of the landmark, from 1.
+     * @return The spot farthest from its closest landmark so far, to be the next landmark, or -1 if there is none.
+     */
+    private int buildLandmark(int from, int landmark) {
+        int slot = (landmark - 1) * Chunk.CELLS;
+        int head = 0, tail = 0, farthest = -1, farthestDistance = 0;
+        setLandmarkDistance(from, slot, 0);
+        homeFieldQueue[tail++] = from;
+        while (head < tail){
+            int current = homeFieldQueue[head++];
+            Chunk here = chunkOf(current);
+            int spot = spotOf(current);
+            int distance = here.landmarkDistance[slot + spot];
+            
+            //How far this spot is from its closest landmark.
+            int closest = distance;
+            if (here.homeFieldBuild == homeFieldBuild && here.homeDistance[spot] >= 0)
+                closest = Math.min(closest, here.homeDistance[spot]);
+            for (int other = 0; other < slot; other += Chunk.CELLS)
+                if (here.landmarkDistance[other + spot] >= 0)
+                    closest = Math.min(closest, here.landmarkDistance[other + spot]);
+            if (closest > farthestDistance){
+                farthest = current;
+                farthestDistance = closest;
+            }
+            
+            for (int i = 0; i < 4; i++){
+                int neighbor = (i < 2) ? stepX(current, (i == 0) ? 1 : -1) : stepY(current, (i == 2) ? 1 : -1);
+                if (neighbor < 0 || !isTraversable(neighbor))
+                    continue;
+                Chunk chunk = chunkOf(neighbor);
+                if (chunk.landmarkBuild == landmarkBuild && chunk.landmarkDistance[slot + spotOf(neighbor)] >= 0)
+                    continue;
+                setLandmarkDistance(neighbor, slot, distance + 1);
+                if (tail == homeFieldQueue.length)
+                    homeFieldQueue = Arrays.copyOf(homeFieldQueue, tail * 2);
+                homeFieldQueue[tail++] = neighbor;
+            }
+        }
+        return farthest;
+    }
+    
+    /**
+     * Write a spot's distance to a landmark for the current build, clearing the chunk's old tables the first time it is touched.
+     * @param cell The cell.
+     * @param slot Start of the landmark's table in {@link Chunk#landmarkDistance}.
+     * @param distance Number of steps to the landmark.
+     */
+    private void setLandmarkDistance(int cell, int slot, int distance) {
+        Chunk chunk = chunkFor(cell);
+        if (chunk.landmarkBuild != landmarkBuild){
+            if (chunk.landmarkDistance == null)
+                chunk.landmarkDistance = new int[LANDMARKS * Chunk.CELLS];
+            Arrays.fill(chunk.landmarkDistance, -1);
+            chunk.landmarkBuild = landmarkBuild;
+        }
+        chunk.landmarkDistance[slot + spotOf(cell)] = distance;
+    }
+    
+    /**
+     * Write a spot's distance to home for the current build, clearing the chunk's old distances the first time it is touched.
+     * @param cell The cell.
+     * @param distance Number of steps to home.
+     */
+    private void setHomeDistance(int cell, int distance) {
+        Chunk chunk = chunkFor(cell);
+        if (chunk.homeFieldBuild != homeFieldBuild){
+            if (chunk.homeDistance == null)
+                chunk.homeDistance = new int[Chunk.CELLS];
+            Arrays.fill(chunk.homeDistance, -1);
+            chunk.homeFieldBuild = homeFieldBuild;
+        }
+        chunk.homeDistance[spotOf(cell)] = distance;
+    }
+    
+    /**
+     * Find my chunk for a chunk numbered by another ant, whose span may be different.  My span doesn't grow.
+     * @param otherChunk Chunk numbered in the other ant's span.
+     * @param otherSpan The other ant's span.
+     * @return My chunk for the same place, or -1 if it is outside my span.
+     */
+    public int chunkFromSpan(int otherChunk, int otherSpan) {
+        int otherShift = Integer.numberOfTrailingZeros(otherSpan >> Chunk.SHIFT);
+        //Both spans are centered on home, so the chunks are just shifted by the difference of half their widths.
+        int offset = (chunksPerSide - (otherSpan >> Chunk.SHIFT)) / 2;
+        int cx = (otherChunk >>> otherShift) + offset, cy = (otherChunk & ((1 << otherShift) - 1)) + offset;
+        if (cx < 0 || cy < 0 || cx >= chunksPerSide || cy >= chunksPerSide)
+            return -1;
+        return (cx << chunksShift) | cy;
+    }
+    
+    /**
+     * Double the span, keeping home in the middle.
+     * <p>
+     * The existing chunks keep their spots and just move to their new place, and every cell held by this knowledge is renumbered.
+     */
+    private void grow() {
+        int oldChunksPerSide = chunksPerSide, oldShift = chunksShift;
+        Chunk[] oldChunks = chunks;
+        setSpan(span << 1);
+        chunks = new Chunk[chunksPerSide * chunksPerSide];
+        int offset = oldChunksPerSide >> 1;
+        for (int cx = 0; cx < oldChunksPerSide; cx++)
+            for (int cy = 0; cy < oldChunksPerSide; cy++)
+                chunks[(cx + offset) * chunksPerSide + cy + offset] = oldChunks[cx * oldChunksPerSide + cy];
+        for (int i = 0; i < numChanged; i++)
+            changedSpots[i] = renumber(changedSpots[i], oldShift);
+        foodIndex = renumber(foodIndex, oldShift);
+        frontier = renumber(frontier, oldShift);
+        if (homeFieldFarthest >= 0)
+            homeFieldFarthest = renumber(homeFieldFarthest, oldShift);
+    }
+    
+    /**
+     * Renumber a cell from the old span to the current one.  The spot within its chunk stays the same, only the chunk moves.
+     * @param oldCell Cell in the old span.
+     * @param oldShift log2 of the old chunks per side.
+     * @return Cell in the current span.
+     */
+    private int renumber(int oldCell, int oldShift) {
+        int oldChunk = oldCell >>> Chunk.SPOT_BITS, move = (1 << oldShift) >> 1;
+        int cx = (oldChunk >>> oldShift) + move, cy = (oldChunk & ((1 << oldShift) - 1)) + move;
+        return (((cx << chunksShift) | cy) << Chunk.SPOT_BITS) | (oldCell & (Chunk.CELLS - 1));
+    }
+    
+    /**
+     * Build a copy of an index for the current span.
+     * @param index Index of cells in the old span, or null.
+     * @param oldShift log2 of the old chunks per side.
+     * @return The renumbered index, or null.
+     */
+    private CellIndex renumber(CellIndex index, int oldShift) {
+        if (index == null)
+            return null;
+        CellIndex grown = new CellIndex(span);
+        for (int cell = index.nextMember(0); cell >= 0; cell = index.nextMember(cell + 1))
+            grown.add(renumber(cell, oldShift));
+        return grown;
+    }
+    
+    /**
+     * The chunk holding a cell.
+     * @param cell The cell.
+     * @return The chunk, or null if nothing is known about any of its spots.
+     */
+    private Chunk chunkOf(int cell) {
+        return chunks[cell >>> Chunk.SPOT_BITS];
+    }
+    
+    /**
+     * The chunk holding a cell, allocating it if needed.
+     * @param cell The cell.
+     * @return The chunk.
+     */
+    private Chunk chunkFor(int cell) {
+        int index = cell >>> Chunk.SPOT_BITS;
+        if (chunks[index] == null)
+            chunks[index] = new Chunk();
+        return chunks[index];
+    }
+    
+    /**
+     * Note that a spot changed whether it is traversable, so the cluster graph of its chunk, and of the chunk beside it if the spot is on the edge, must be rebuilt.
+     * @param chunk The chunk holding the spot.
+     * @param cell The cell.
+     */
+    private void clusterChanged(Chunk chunk, int cell) {
+        chunk.clusterStale = true;
+        int x = (cell >>> Chunk.SHIFT) & Chunk.MASK, y = cell & Chunk.MASK;
+        int neighbor = -1;
+        if (x == 0) neighbor = stepX(cell, -1);
+        else if (x == Chunk.MASK) neighbor = stepX(cell, 1);
+        if (neighbor >= 0 && chunkOf(neighbor) != null)
+            chunkOf(neighbor).clusterStale = true;
+        neighbor = -1;
+        if (y == 0) neighbor = stepY(cell, -1);
+        else if (y == Chunk.MASK) neighbor = stepY(cell, 1);
+        if (neighbor >= 0 && chunkOf(neighbor) != null)
+            chunkOf(neighbor).clusterStale = true;
+    }
+    
+    /**
+     * The chunk holding a cell, with its cluster graph for hierarchical routing up to date.
+     * <p>
+     * Each edge the chunk shares with another is split into runs of spots that are traversable on both sides, and the middle of each run is an entrance.
+     * The steps between every pair of entrances, staying inside the chunk, are found by a breadth first search from each one.
+     * The graph is kept in the {@link Chunk} by spot, so it stays good when the map grows, and is only rebuilt once a spot on it, or on the edge beside it, changes.
+     * @param cell A cell in the chunk.
+     * @param distance Work space of {@link Chunk#CELLS} entries.
+     * @param queue Work space of {@link Chunk#CELLS} entries.
+     * @return The chunk, or null if nothing is known about any of its spots.
+     */
+    Chunk cluster(int cell, int[] distance, int[] queue) {
+        Chunk chunk = chunkOf(cell);
+        if (chunk == null || !chunk.clusterStale)
+            return chunk;
+        int base = cell & ~(Chunk.CELLS - 1);
+        int count = 0;
+        int[] entrances = new int[4 * Chunk.SIZE], sides = new int[4 * Chunk.SIZE];
+        for (int d = 0; d < AntBrain.DIRECTIONS.length; d++){
+            int dx = AntBrain.STEP_X[d], dy = AntBrain.STEP_Y[d];
+            int runStart = -1;
+            for (int i = 0; i <= Chunk.SIZE; i++){
+                boolean open = false;
+                if (i < Chunk.SIZE){
+                    int spot = Chunk.edgeSpot(dx, dy, i);
+                    int outside = (dx != 0) ? stepX(base | spot, dx) : stepY(base | spot, dy);
+                    open = chunk.isTraversable(spot) && outside >= 0 && isTraversable(outside);
+                }
+                if (open && runStart < 0)
+                    runStart = i;
+                else if (!open && runStart >= 0){
+                    entrances[count] = Chunk.edgeSpot(dx, dy, (runStart + i - 1) / 2);
+                    sides[count++] = d;
+                    runStart = -1;
+                }
+            }
+        }
+        int[] entranceDistance = new int[count * count];
+        for (int i = 0; i < count; i++){
+            chunk.localSearch(entrances[i], distance, null, queue, -1);
+            for (int j = 0; j < count; j++)
+                entranceDistance[i * count + j] = distance[entrances[j]];
+        }
+        chunk.entrances = Arrays.copyOf(entrances, count);
+        chunk.entranceSide = Arrays.copyOf(sides, count);
+        chunk.entranceDistance = entranceDistance;
+        chunk.clusterStale = false;
+        return chunk;
+    }
+    
+    /**
+     * Position of a cell inside its chunk.
+     * @param cell The cell.
+     * @return The spot within the chunk.
+     */
+    private static int spotOf(int cell) {
+        return cell & (Chunk.CELLS - 1);
+    }
+    
+    /**
+     * Getter for the food amount.
+     * @param cell The cell.
+     * @return Amount of food, -1 if never visited.
+     */
+    public int getFood(int cell) {
+        Chunk chunk = chunkOf(cell);
+        return (chunk == null) ? -1 : chunk.food[spotOf(cell)];
+    }
+    
+    /**
+     * Getter for traversable.
+     * @param cell The cell.
+     * @return True if the spot is known to be traversable.
+     */
+    public boolean isTraversable(int cell) {
+        Chunk chunk = chunkOf(cell);
+        return chunk != null && chunk.isTraversable(spotOf(cell));
+    }
+    
+    /**
+     * Getter for the year the spot was last viewed.
+     * @param cell The cell.
+     * @return The year, -1 if never.
+     */
+    public int getYearViewed(int cell) {
+        Chunk chunk = chunkOf(cell);
+        return (chunk == null) ? -1 : chunk.yearViewed[spotOf(cell)];
+    }
+    
+    /**
+     * Getter for the year the spot was last visited.
+     * @param cell The cell.
+     * @return The year, -1 if never.
+     */
+    public int getYearVisited(int cell) {
+        Chunk chunk = chunkOf(cell);
+        return (chunk == null) ? -1 : chunk.yearVisited[spotOf(cell)];
+    }
+    
+    /**
+     * Has this spot ever been viewed or visited.
+     * @param cell The cell.
+     * @return True if anything is known about this spot.
+     */
+    public boolean isKnown(int cell) {
+        Chunk chunk = chunkOf(cell);
+        return chunk != null && chunk.isKnown(spotOf(cell));
+    }
+    
+    /**
+     * Does this spot still need exploring, i.e. it hasn't been visited and isn't known to be blocked.
+     * @param cell The cell.
+     * @return True if the spot is unexplored.
+     */
+    public boolean isUnexplored(int cell) {
+        Chunk chunk = chunkOf(cell);
+        if (chunk == null)
+            return true;
+        int spot = spotOf(cell);
+        return !(chunk.yearVisited[spot] >= 0 || (chunk.yearViewed[spot] >= 0 && !chunk.isTraversable(spot)));
+    }
+    
+    /**
+     * Set the food for a spot, and the year it was learned.
+     * @param cell The cell.
+     * @param p_food The amount of food.
+     * @param year The year it was learned.
+     */
+    public void setFood(int cell, int p_food, int year) {
+        Chunk chunk = chunkFor(cell);
+        int spot = spotOf(cell);
+        if (chunk.food[spot] == p_food && chunk.yearVisited[spot] == year)
+            return;
+        if (chunk.food[spot] != p_food)
+            foodVersion++;
+        chunk.food[spot] = p_food;
+        chunk.setYearVisited(spot, year);
+        if (p_food > 0)
+            foodIndex.add(cell);
+        else
+            foodIndex.remove(cell);
+        if (frontier != null)
+            frontier.remove(cell);
+        markChanged(chunk, spot, cell);
+    }
+    
+    /**
+     * Set whether a spot is traversable, and the year it was learned.
+     * @param cell The cell.
+     * @param isTraversable Whether the spot is traversable.
+     * @param year The year it was learned.
+     */
+    public void setTraversable(int cell, boolean isTraversable, int year) {
+        Chunk chunk = chunkFor(cell);
+        int spot = spotOf(cell);
+        if (chunk.isTraversable(spot) == isTraversable && chunk.yearViewed[spot] == year)
+            return;
+        if (chunk.isTraversable(spot) != isTraversable){
+            traversableVersion++;
+            if (!isTraversable)
+                blockedVersion++;
+            clusterChanged(chunk, cell);
+        }
+        chunk.setTraversable(spot, isTraversable);
+        chunk.setYearViewed(spot, year);
+        if (frontier != null && !isTraversable)
+            frontier.remove(cell);
+        markChanged(chunk, spot, cell);
+    }
+    
+    /**
+     * Copy in what a friend knows about a spot, where it is newer than what I know.
+     * @param cell The cell.
+     * @param p_food Friend's amount of food.
+     * @param isTraversable Friend's traversable.
+     * @param p_yearViewed Year the friend learned traversable, -1 if never.
+     * @param p_yearVisited Year the friend learned the food, -1 if never.
+     */
+    public void mergeSpot(int cell, int p_food, boolean isTraversable, int p_yearViewed, int p_yearVisited) {
+        Chunk chunk = chunkOf(cell);
+        int viewed = -1, visited = -1;
+        if (chunk != null){
+            int spot = spotOf(cell);
+            viewed = chunk.yearViewed[spot];
+            visited = chunk.yearVisited[spot];
+        }
+        if (viewed < p_yearViewed)
+            setTraversable(cell, isTraversable, p_yearViewed);
+        if (visited < p_yearVisited)
+            setFood(cell, p_food, p_yearVisited);
+    }
+    
+    /**
+     * Copy in what a friend knows about one chunk, where it is newer than what I know.
+     * <p>
+     * The chunk's stamps are checked first, so a chunk I already know at least as well as the friend costs nothing to merge.
+     * A chunk I know nothing about is copied in without comparing any spots.
+     * @param message The friend's message.
+     * @param group The group of spots within the message.
+     * @param chunkIndex Which of my chunks the group is in.
+     */
+    public void mergeGroup(AntMessage message, int group, int chunkIndex) {
+        Chunk chunk = chunks[chunkIndex];
+        int base = chunkIndex << Chunk.SPOT_BITS, end = message.groupEnd(group);
+        if (chunk == null){
+            chunk = chunks[chunkIndex] = new Chunk();
+            for (int i = message.groupStart[group]; i < end; i++)
+                adoptSpot(chunk, spotOf(message.cells[i]), base | spotOf(message.cells[i]), message.food[i], message.traversable[i], message.yearViewed[i], message.yearVisited[i]);
+            return;
+        }
+        if (chunk.covers(message, group))
+            return;
+        for (int i = message.groupStart[group]; i < end; i++)
+            mergeSpot(base | spotOf(message.cells[i]), message.food[i], message.traversable[i], message.yearViewed[i], message.yearVisited[i]);
+    }
+    
+    /**
+     * Copy a friend's spot into a chunk that was just created for it, so there is nothing of mine to compare it with.
+     * @param chunk The new chunk.
+     * @param spot The spot within the chunk.
+     * @param cell The cell.
+     * @param p_food Friend's amount of food.
+     * @param isTraversable Friend's traversable.
+     * @param p_yearViewed Year the friend learned traversable, -1 if never.
+     * @param p_yearVisited Year the friend learned the food, -1 if never.
+     */
+    private void adoptSpot(Chunk chunk, int spot, int cell, int p_food, boolean isTraversable, int p_yearViewed, int p_yearVisited) {
+        if (p_yearViewed >= 0){
+            if (isTraversable){
+                traversableVersion++;
+                clusterChanged(chunk, cell);
+            }
+            chunk.setTraversable(spot, isTraversable);
+            chunk.setYearViewed(spot, p_yearViewed);
+            if (frontier != null && !isTraversable)
+                frontier.remove(cell);
+            markChanged(chunk, spot, cell);
+        }
+        if (p_yearVisited >= 0){
+            if (chunk.food[spot] != p_food)
+                foodVersion++;
+            chunk.food[spot] = p_food;
+            chunk.setYearVisited(spot, p_yearVisited);
+            if (p_food > 0)
+                foodIndex.add(cell);
+            if (frontier != null)
+                frontier.remove(cell);
+            markChanged(chunk, spot, cell);
+        }
+    }
+    
+    /**
+     * Bump the version and remember that this spot needs to go out in the next message.
+     * @param chunk The chunk holding the spot.
+     * @param spot The spot within the chunk.
+     * @param cell The cell.
+     */
+    private void markChanged(Chunk chunk, int spot, int cell) {
+        version++;
+        if (chunk.markChanged(spot, version)){
+            if (numChanged == changedSpots.length)
+                changedSpots = Arrays.copyOf(changedSpots, numChanged * 2);
+            changedSpots[numChanged++] = cell;
+        }
+    }
+    
+    /**
+     * Write spots into the message, either the ones changed since the last message or every spot this ant knows anything about.
+     * <p>
+     * Either way, all changes so far have now been sent.
+     * @param message Message to fill in.
+     * @param wholeMap True to write every known spot, false to write only the changed spots.
+     */
+    public void writeSpots(AntMessage message, boolean wholeMap) {
+        writeSpots(message, wholeMap, null, 0);
+    }
+    
+    /**
+     * Write spots into the message, either the ones changed since the last message or the whole map.
+     * <p>
+     * With digests from the friends who asked for the whole map, a chunk that every one of them already has is left out,
+     * apart from its changed spots, which the other ants listening still need.
+     * <p>
+     * With a byte budget, only the most valuable changed spots that fit are written; see {@link #pickWithinBudget}.
+     * The rest stay flagged for the next message, and the message's version only claims the changes before the oldest of them.
+     * The whole map is never cut short, since the friend asking for it has already missed something.
+     * @param message Message to fill in.
+     * @param wholeMap True to write the whole map, false to write only the changed spots.
+     * @param digests Digests of the friends' maps, or null to write every known spot.
+     * @param budget Most bytes of changed spots to write, or 0 for no limit.
+     */
+    public void writeSpots(AntMessage message, boolean wholeMap, List<ChunkDigest> digests, int budget) {
+        message.hasGrid = true;
+        message.version = version;
+        message.span = span;
+        if (wholeMap){
+            message.baseVersion = 0;
+            boolean[] agreed = agreedChunks(digests);
+            int count = 0;
+            for (int index = 0; index < chunks.length; index++)
+                if (chunks[index] != null)
+                    count += agreed[index] ? countChanged(chunks[index]) : chunks[index].countKnown();
+            message.allocateSpots(count);
+            //Chunk by chunk, so the cells go out in order.
+            for (int index = 0; index < chunks.length; index++){
+                Chunk chunk = chunks[index];
+                if (chunk == null)
+                    continue;
+                for (int spot = 0; spot < Chunk.CELLS; spot++)
+                    if (agreed[index] ? chunk.isChanged(spot) : chunk.isKnown(spot))
+                        addSpot(message, chunk, spot, (index << Chunk.SPOT_BITS) | spot);
+            }
+        }
+        else {
+            message.baseVersion = sentThrough;
+            int count = (budget > 0) ? pickWithinBudget(budget) : numChanged;
+            message.allocateSpots(count);
+            //Sorted, so the spots go out chunk by chunk.
+            Arrays.sort(changedSpots, 0, count);
+            for (int i=0; i < count; i++)
+                addSpot(message, chunkOf(changedSpots[i]), spotOf(changedSpots[i]), changedSpots[i]);
+            if (count < numChanged){
+                //Keep the spots that didn't fit for the next message.
+                for (int i=0; i < count; i++)
+                    chunkOf(changedSpots[i]).clearChanged(spotOf(changedSpots[i]));
+                int oldest = version;
+                for (int i=count; i < numChanged; i++)
+                    oldest = Math.min(oldest, chunkOf(changedSpots[i]).changedVersion[spotOf(changedSpots[i])]);
+                System.arraycopy(changedSpots, count, changedSpots, 0, numChanged - count);
+                numChanged -= count;
+                sentThrough = oldest - 1;
+                message.version = sentThrough;
+                return;
+            }
+        }
+        for (int i=0; i < numChanged; i++)
+            chunkOf(changedSpots[i]).clearChanged(spotOf(changedSpots[i]));
+        numChanged = 0;
+        sentThrough = version;
+    }
+    
+    /**
+     * Choose which changed spots to send within a byte budget, and move them to the front of the changed list.
+     * <p>
+     * Spots with food go first, then spots found to be blocked, then everything else.
+     * Within each of those, the most recently visited or viewed spots go first.
+     * Spots are taken in that order until the next one would go over the budget, but at least one is always taken.
+     * @param budget Most bytes of spots to write.
+     * @return Number of spots chosen.
+     */
+    private int pickWithinBudget(int budget) {
+        if (budgetKeys.length < numChanged){
+            budgetKeys = new long[changedSpots.length];
+            budgetChosen = new int[changedSpots.length];
+            budgetTaken = new boolean[changedSpots.length];
+        }
+        if (spareSpots.length < changedSpots.length)
+            spareSpots = new int[changedSpots.length];
+        if (groupedStamp.length < chunks.length){
+            groupedStamp = new int[chunks.length];
+            groupedGeneration = 0;
+        }
+        //Sort keys: the rank, then how long ago the spot was seen, then its place in the changed list.
+        long[] keys = budgetKeys;
+        for (int i=0; i < numChanged; i++){
+            Chunk chunk = chunkOf(changedSpots[i]);
+            int spot = spotOf(changedSpots[i]);
+            long rank = (chunk.yearVisited[spot] >= 0 && chunk.food[spot] > 0) ? 0 : (chunk.yearViewed[spot] >= 0 && !chunk.isTraversable(spot)) ? 1 : 2;
+            long age = Math.max(0, year - Math.max(chunk.yearVisited[spot], chunk.yearViewed[spot]));
+            keys[i] = (rank << 60) | (Math.min(age, (1L << 28) - 1) << 32) | i;
+        }
+        Arrays.sort(keys, 0, numChanged);
+        //Chunks that already have a group in the message, stamped with this message's generation, so only the first spot in each pays for the group header.
+        int generation = ++groupedGeneration;
+        int[] chosen = budgetChosen;
+        int count = 0, bytes = 0;
+        for (int k=0; k < numChanged; k++){
+            long key = keys[k];
+            int cell = changedSpots[(int)key];
+            Chunk chunk = chunkOf(cell);
+            int spot = spotOf(cell), index = cell >>> Chunk.SPOT_BITS;
+            int size = MessageCodec.spotSize(year, chunk.food[spot], chunk.yearViewed[spot], chunk.yearVisited[spot])
+                    + (groupedStamp[index] == generation ? 0 : MessageCodec.GROUP_HEADER_SIZE);
+            //Always send at least one spot, so a tiny budget still makes progress.
+            if (bytes + size > budget && count > 0)
+                break;
+            bytes += size;
+            groupedStamp[index] = generation;
+            chosen[count++] = (int)key;
+        }
+        //Chosen spots first, in the order they were picked, then the rest in their old order.
+        boolean[] taken = budgetTaken;
+        Arrays.fill(taken, 0, numChanged, false);
+        int[] reordered = spareSpots;
+        for (int i=0; i < count; i++){
+            reordered[i] = changedSpots[chosen[i]];
+            taken[chosen[i]] = true;
+        }
+        for (int i=0, next=count; i < numChanged; i++)
+            if (!taken[i])
+                reordered[next++] = changedSpots[i];
+        spareSpots = changedSpots;
+        changedSpots = reordered;
+        return count;
+    }
+    
+    /**
+     * Count the spots of a chunk that changed since the last message.
+     * @param chunk The chunk.
+     * @return Number of changed spots.
+     */
+    private int countChanged(Chunk chunk) {
+        int count = 0;
+        for (int spot = 0; spot < Chunk.CELLS; spot++)
+            if (chunk.isChanged(spot))
+                count++;
+        return count;
+    }
+    
+    /**
+     * Find the chunks that every friend's digest agrees with, so they don't need to be sent.
+     * @param digests Digests of the friends' maps, or null.
+     * @return For each of my chunks, true if every digest has the same hash for it.  The array is reused by the next call.
+     */
+    private boolean[] agreedChunks(List<ChunkDigest> digests) {
+        if (agreed.length < chunks.length){
+            agreed = new boolean[chunks.length];
+            chunkMatches = new int[chunks.length];
+        }
+        Arrays.fill(agreed, 0, chunks.length, false);
+        if (digests == null || digests.isEmpty())
+            return agreed;
+        int[] matches = chunkMatches;
+        Arrays.fill(matches, 0, chunks.length, 0);
+        for (ChunkDigest digest : digests){
+            for (int i = 0; i < digest.chunks.length; i++){
+                int index = chunkFromSpan(digest.chunks[i], digest.span);
+                if (index >= 0 && chunks[index] != null && chunks[index].hash() == digest.hashes[i])
+                    matches[index]++;
+            }
+        }
+        for (int index = 0; index < chunks.length; index++)
+            agreed[index] = (matches[index] == digests.size());
+        return agreed;
+    }
+    
+    /**
+     * Take a digest of this ant's map, with the hash of every chunk it knows anything about.
+     * @return The {@link ChunkDigest}.
+     */
+    public ChunkDigest digest() {
+        int count = 0;
+        for (Chunk chunk : chunks)
+            if (chunk != null && chunk.countKnown() > 0)
+                count++;
+        int[] digestChunks = new int[count], hashes = new int[count];
+        count = 0;
+        for (int index = 0; index < chunks.length; index++){
+            if (chunks[index] != null && chunks[index].countKnown() > 0){
+                digestChunks[count] = index;
+                hashes[count++] = chunks[index].hash();
+            }
+        }
+        return new ChunkDigest(span, digestChunks, hashes);
+    }
+    
+    /**
+     * Add one of my spots to a message.
+     * @param message Message to add to.
+     * @param chunk The chunk holding the spot.
+     * @param spot The spot within the chunk.
+     * @param cell The cell.
+     */
+    private void addSpot(AntMessage message, Chunk chunk, int spot, int cell) {
+        message.addSpot(cell, chunk.food[spot], chunk.isTraversable(spot), chunk.yearViewed[spot], chunk.yearVisited[spot]);
+    }
+}
+
+/**
+ * Chunk class holds a 16 x 16 square of spots from an ant's map, as flat arrays with one entry per spot.
+ * <p>
+ * A spot's position in the chunk is x * 16 + y, counting from the chunk's lower corner.
+ * The static methods here convert between cells, as packed by {@link AntKnowledge}, and columns and rows counted from the lower corner of the span.
+ * 
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+class Chunk {
+    /** Chunks are SIZE x SIZE spots. */
+    static final int SHIFT = 4, SIZE = 1 << SHIFT, MASK = SIZE - 1, SPOT_BITS = 2 * SHIFT, CELLS = 1 << SPOT_BITS;
+    
+    //Amount of food, -1 if I haven't learned about this spot yet.
+    final int[] food = new int[CELLS];
+    //The day at which this spot was last analyzed, -1 if never.
+    final int[] yearViewed = new int[CELLS];
+    //The day at which this spot was last visited (to check for food), -1 if never.
+    final int[] yearVisited = new int[CELLS];
+    //Can I walk on this spot?  One bit per spot.
+    private final long[] traversable = new long[CELLS / 64];
+    //Has this spot changed since the last message?  One bit per spot.
+    private final long[] changed = new long[CELLS / 64];
+    //Knowledge version of the first change to each flagged spot since it was last sent.
+    final int[] changedVersion = new int[CELLS];
+    //Steps from each spot to home, -1 if unreachable, and which build of the distance field they belong to.  See {@link AntKnowledge#homeDistance}.
+    int[] homeDistance = null;
+    int homeFieldBuild = -1;
+    //Steps from each spot to each landmark but home, one table of CELLS after another, and the build they belong to.  See {@link AntKnowledge#landmarkDistance}.
+    int[] landmarkDistance = null;
+    int landmarkBuild = -1;
+    //Cluster graph for hierarchical routing: the entrance spots on the edges, the {@link Direction} leading out of each,
+    //and the steps inside the chunk between each pair of entrances, -1 if there is no way.  See {@link AntKnowledge#cluster}.
+    int[] entrances = null, entranceSide = null, entranceDistance = null;
+    boolean clusterStale = true;
+    //Which spots have a year viewed, and which a year visited.  One bit per spot.
+    private final long[] viewed = new long[CELLS / 64], visited = new long[CELLS / 64];
+    //No spot in this chunk was viewed, or visited, before these years.  Kept as lower bounds, and tightened when a merge needs them.
+    private int minViewed = Integer.MAX_VALUE, minVisited = Integer.MAX_VALUE;
+    //Could the lower bounds be tightened, because the spot holding one of them was overwritten.
+    private boolean boundsStale = false;
+    //Hash of everything known in this chunk, recomputed when something changed since it was last asked for.
+    private int hash;
+    private boolean hashStale = true;
+    
+    /**
+     * Pack a location into a cell: the chunk number, row by row across the span, then the spot within the chunk.
+     * @param column Column, counting from the lower corner of the span.
+     * @param row Row, counting from the lower corner of the span.
+     * @param chunksShift log2 of the number of chunks per side of the span.
+     * @return The cell.
+     */
+    static int cellAt(int column, int row, int chunksShift) {
+        int chunk = ((column >>> SHIFT) << chunksShift) | (row >>> SHIFT);
+        return (chunk << SPOT_BITS) | ((column & MASK) << SHIFT) | (row & MASK);
+    }
+    
+    /**
+     * Column of a cell.
+     * @param cell The cell.
+     * @param chunksShift log2 of the number of chunks per side of the span.
+     * @return Column, counting from the lower corner of the span.
+     */
+    static int columnOf(int cell, int chunksShift) {
+        return ((cell >>> (SPOT_BITS + chunksShift)) << SHIFT) | ((cell >>> SHIFT) & MASK);
+    }
+    
+    /**
+     * Row of a cell.
+     * @param cell The cell.
+     * @param chunksShift log2 of the number of chunks per side of the span.
+     * @return Row, counting from the lower corner of the span.
+     */
+    static int rowOf(int cell, int chunksShift) {
+        return (((cell >>> SPOT_BITS) & ((1 << chunksShift) - 1)) << SHIFT) | (cell & MASK);
+    }
+    
+    /**
+     * A spot on one edge of a chunk.
+     * @param dx 1 for the east edge, -1 for the west edge, 0 for north or south.
+     * @param dy 1 for the north edge, -1 for the south edge, 0 for east or west.
+     * @param i Position along the edge.
+     * @return The spot.
+     */
+    static int edgeSpot(int dx, int dy, int i) {
+        if (dx != 0)
+            return ((dx > 0 ? MASK : 0) << SHIFT) | i;
+        return (i << SHIFT) | (dy > 0 ? MASK : 0);
+    }
+    
+    /**
+     * Create a chunk where nothing is known yet.
+     */
+    public Chunk() {
+        Arrays.fill(food, -1);
+        Arrays.fill(yearViewed, -1);
+        Arrays.fill(yearVisited, -1);
+    }
+    
+    /**
+     * Getter for traversable.
+     * @param spot The spot.
+     * @return True if the spot is known to be traversable.
+     */
+    public boolean isTraversable(int spot) {
+        return (traversable[spot >>> 6] & (1L << spot)) != 0;
+    }
+    
+    /**
+     * Breadth first search from one spot over the traversable spots of this chunk, never leaving it.
+     * @param fromSpot Spot to search from.
+     * @param distance Filled with the steps to each spot, -1 if it can't be reached inside the chunk.
+     * @param from Filled with the spot each spot was reached from, or null if not needed.
+     * @param queue Work space of CELLS entries.
+     * @param toSpot Spot at which to stop, or -1 to reach every spot.
+     */
+    void localSearch(int fromSpot, int[] distance, int[] from, int[] queue, int toSpot) {
+        Arrays.fill(distance, 0, CELLS, -1);
+        distance[fromSpot] = 0;
+        int tail = 0;
+        queue[tail++] = fromSpot;
+        for (int head = 0; head < tail; head++){
+            int spot = queue[head];
+            int x = spot >>> SHIFT, y = spot & MASK;
+            for (int d = 0; d < 4; d++){
+                int next;
+                switch (d){
+                    case 0: next = (y < MASK) ? spot + 1 : -1; break;
+                    case 1: next = (y > 0) ? spot - 1 : -1; break;
+                    case 2: next = (x < MASK) ? spot + SIZE : -1; break;
+                    default: next = (x > 0) ? spot - SIZE : -1; break;
+                }
+                if (next < 0 || distance[next] >= 0 || !isTraversable(next))
+                    continue;
+                distance[next] = distance[spot] + 1;
+                if (from != null)
+                    from[next] = spot;
+                if (next == toSpot)
+                    return;
+                queue[tail++] = next;
+            }
+        }
+    }
+    
+    /**
+     * Position of a spot in the list of entrances of the cluster graph.
+     * @param spot The spot.
+     * @param fromIndex Index to start looking at.
+     * @return The index in {@link #entrances}, or -1 if the spot isn't an entrance from there on.
+     */
+    int entranceIndex(int spot, int fromIndex) {
+        for (int i = fromIndex; i < entrances.length; i++)
+            if (entrances[i] == spot)
+                return i;
+        return -1;
+    }
+    
+    /**
+     * Setter for traversable.
+     * @param spot The spot.
+     * @param isTraversable Whether the spot is traversable.
+     */
+    public void setTraversable(int spot, boolean isTraversable) {
+        if (isTraversable)
+            traversable[spot >>> 6] |= (1L << spot);
+        else
+            traversable[spot >>> 6] &= ~(1L << spot);
+    }
+    
+    /**
+     * Has this spot ever been viewed or visited.
+     * @param spot The spot.
+     * @return True if anything is known about this spot.
+     */
+    public boolean isKnown(int spot) {
+        return ((viewed[spot >>> 6] | visited[spot >>> 6]) & (1L << spot)) != 0;
+    }
+    
+    /**
+     * Setter for the year a spot was last viewed, keeping the chunk's stamps up to date.
+     * @param spot The spot.
+     * @param year The year, at least 0.
+     */
+    public void setYearViewed(int spot, int year) {
+        if ((viewed[spot >>> 6] & (1L << spot)) != 0 && yearViewed[spot] == minViewed)
+            boundsStale = true;
+        viewed[spot >>> 6] |= (1L << spot);
+        yearViewed[spot] = year;
+        minViewed = Math.min(minViewed, year);
+        hashStale = true;
+    }
+    
+    /**
+     * Setter for the year a spot was last visited, keeping the chunk's stamps up to date.
+     * @param spot The spot.
+     * @param year The year, at least 0.
+     */
+    public void setYearVisited(int spot, int year) {
+        if ((visited[spot >>> 6] & (1L << spot)) != 0 && yearVisited[spot] == minVisited)
+            boundsStale = true;
+        visited[spot >>> 6] |= (1L << spot);
+        yearVisited[spot] = year;
+        minVisited = Math.min(minVisited, year);
+        hashStale = true;
+    }
+    
+    /**
+     * Count the spots this chunk knows anything about.
+     * @return Number of known spots.
+     */
+    public int countKnown() {
+        int known = 0;
+        for (int w = 0; w < CELLS / 64; w++)
+            known += Long.bitCount(viewed[w] | visited[w]);
+        return known;
+    }
+    
+    /**
+     * Hash of everything this chunk knows, so two ants can tell whether their copies of it agree without sending it.
+     * <p>
+     * The hash only depends on the spots, not on where the chunk sits in the span.
+     * @return The hash.
+     */
+    public int hash() {
+        if (!hashStale)
+            return hash;
+        int h = 1;
+        for (int spot = 0; spot < CELLS; spot++){
+            if (!isKnown(spot))
+                continue;
+            h = 31 * h + spot;
+            h = 31 * h + food[spot];
+            h = 31 * h + (isTraversable(spot) ? 1 : 0);
+            h = 31 * h + yearViewed[spot];
+            h = 31 * h + yearVisited[spot];
+        }
+        //Spread the bits, so similar chunks don't get similar hashes.
+        h *= 0x9E3779B1;
+        hash = h ^ (h >>> 16);
+        hashStale = false;
+        return hash;
+    }
+    
+    /**
+     * Does this chunk already know everything in a group of spots from a friend's message, i.e. a merge would change nothing.
+     * <p>
+     * Every spot the friend viewed or visited must be known here too, and nothing here may be older than the newest year in the group.
+     * That is checked against the chunk's stamps, so the group's spots don't have to be compared one at a time.
+     * @param message The friend's message.
+     * @param group The chunk group within the message.
+     * @return True if the merge can be skipped.
+     */
+    public boolean covers(AntMessage message, int group) {
+        int words = group * (CELLS / 64);
+        for (int w = 0; w < CELLS / 64; w++)
+            if ((message.groupViewed[words + w] & ~viewed[w]) != 0 || (message.groupVisited[words + w] & ~visited[w]) != 0)
+                return false;
+        int newestViewed = message.groupYearViewed[group], newestVisited = message.groupYearVisited[group];
+        if (newestViewed <= minViewed && newestVisited <= minVisited)
+            return true;
+        if (!boundsStale)
+            return false;
+        //Tighten the bounds and look again.
+        minViewed = minVisited = Integer.MAX_VALUE;
+        for (int spot = 0; spot < CELLS; spot++){
+            if (yearViewed[spot] >= 0)
+                minViewed = Math.min(minViewed, yearViewed[spot]);
+            if (yearVisited[spot] >= 0)
+                minVisited = Math.min(minVisited, yearVisited[spot]);
+        }
+        boundsStale = false;
+        return newestViewed <= minViewed && newestVisited <= minVisited;
+    }
+    
+    /**
+     * Flag a spot as changed.
+     * @param spot The spot.
+     * @param version Knowledge version of the change, remembered if the spot wasn't flagged already.
+     * @return True if it wasn't flagged already.
+     */
+    public boolean markChanged(int spot, int version) {
+        long bit = 1L << spot;
+        if ((changed[spot >>> 6] & bit) != 0)
+            return false;
+        changed[spot >>> 6] |= bit;
+        changedVersion[spot] = version;
+        return true;
+    }
+    
+    /**
+     * Has this spot changed since the last message.
+     * @param spot The spot.
+     * @return True if the spot is flagged as changed.
+     */
+    public boolean isChanged(int spot) {
+        return (changed[spot >>> 6] & (1L << spot)) != 0;
+    }
+    
+    /**
+     * Clear a spot's changed flag.
+     * @param spot The spot.
+     */
+    public void clearChanged(int spot) {
+        changed[spot >>> 6] &= ~(1L << spot);
+    }
+}
+
+/**
+ * ChunkDigest class is a summary of an ant's map: one hash for each {@link Chunk} it knows anything about.
+ * <p>
+ * An ant that missed some of a friend's updates sends its digest along with its resync request.
+ * The friend then only sends back the chunks whose hash differs from its own, or that are missing from the digest.
+ * 
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+class ChunkDigest {
+    //Span of the map the digest was taken from, which the chunks are numbered in.
+    final int span;
+    //Chunks the ant knows anything about, in increasing order, and the hash of each.
+    final int[] chunks;
+    final int[] hashes;
+    
+    /**
+     * Initialize the {@link ChunkDigest}.
+     * @param p_span Span of the map the digest was taken from.
+     * @param p_chunks Chunks, in increasing order.
+     * @param p_hashes Hash of each chunk.
+     */
+    public ChunkDigest(int p_span, int[] p_chunks, int[] p_hashes) {
+        span = p_span;
+        chunks = p_chunks;
+        hashes = p_hashes;
+    }
+}
+
+/**
+ * CellIndex class is a set of grid cells that can quickly answer which of them are closest to a point.
+ * The cells are packed the way {@link AntKnowledge} packs them, for a span that is a power of two.
+ * <p>
+ * Membership is a bitset, and the set keeps a count of the cells it holds in each {@link Chunk}.
+ * A nearest-cells lookup walks rings of chunks outward from the point, skipping empty chunks,
+ * and stops once no unvisited ring can hold anything closer than what it already found.
+ * 
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+class CellIndex {
+    //Chunks per side of the span, and log2 of it.
+    private int chunksPerSide, chunksShift;
+    //Is each cell in the set.  One bit per cell, so each chunk has CELLS / 64 words.
+    private long[] members;
+    private static final int WORDS_PER_CHUNK = Chunk.CELLS / 64;
+    //Number of cells in the set, per chunk.
+    private int[] chunkCount;
+    private int size = 0;
+    //Distances of the cells found by the current lookup.
+    private int[] foundDistance = new int[1];
+    
+    /**
+     * Create an empty index for a grid.
+     * @param span Width of the grid, a power of two.
+     */
+    public CellIndex(int span) {
+        chunksPerSide = span >> Chunk.SHIFT;
+        chunksShift = Integer.numberOfTrailingZeros(chunksPerSide);
+        members = new long[chunksPerSide * chunksPerSide * WORDS_PER_CHUNK];
+        chunkCount = new int[chunksPerSide * chunksPerSide];
+    }
+    
+    /**
+     * Is the cell in the set.
+     * @param cell The cell.
+     * @return True if the cell is in the set.
+     */
+    public boolean contains(int cell) {
+        return (members[cell >>> 6] & (1L << cell)) != 0;
+    }
+    
+    /**
+     * Number of cells in the set.
+     * @return The size.
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Add a cell to the set.
+     * @param cell The cell.
+     */
+    public void add(int cell) {
+        if (contains(cell))
+            return;
+        members[cell >>> 6] |= (1L << cell);
+        chunkCount[cell >>> Chunk.SPOT_BITS]++;
+        size++;
+    }
+    
+    /**
+     * Remove a cell from the set.
+     * @param cell The cell.
+     */
+    public void remove(int cell) {
+        if (!contains(cell))
+            return;
+        members[cell >>> 6] &= ~(1L << cell);
+        chunkCount[cell >>> Chunk.SPOT_BITS]--;
+        size--;
+    }
+    
+    /**
+     * Find the next cell in the set, in cell order.
+     * @param fromCell Cell to start looking from.
+     * @return The first cell in the set at or after fromCell, or -1 if there are none.
+     */
+    public int nextMember(int fromCell) {
+        int word = fromCell >>> 6;
+        if (word >= members.length)
+            return -1;
+        long bits = members[word] & (-1L << fromCell);
+        while (bits == 0){
+            if (++word == members.length)
+                return -1;
+            bits = members[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+    
+    /**
+     * Find the cells in the set closest to a cell, by distance in X + distance in Y.
+     * @param fromCell Cell to measure distance from.
+     * @param excludeCell A cell to leave out of the results, or -1.
+     * @param out Filled with the closest cells, closest first.
+     * @param count Maximum number of cells to find.
+     * @return Number of cells put into out.
+     */
+    public int nearest(int fromCell, int excludeCell, int[] out, int count) {
+        if (size == 0 || count <= 0)
+            return 0;
+        if (foundDistance.length < count)
+            foundDistance = new int[count];
+        int fromX = Chunk.columnOf(fromCell, chunksShift), fromY = Chunk.rowOf(fromCell, chunksShift);
+        int fromChunkX = fromX >> Chunk.SHIFT, fromChunkY = fromY >> Chunk.SHIFT;
+        int found = 0;
+        
+        for (int ring = 0; ring < chunksPerSide; ring++){
+            //Every cell in this ring of chunks is at least this far away.
+            int closestPossible = (ring == 0) ? 0 : (ring - 1) * Chunk.SIZE + 1;
+            if (found == count && foundDistance[found - 1] <= closestPossible)
+                break;
+            for (int cx = fromChunkX - ring; cx <= fromChunkX + ring; cx++){
+                if (cx < 0 || cx >= chunksPerSide)
+                    continue;
+                boolean edgeColumn = (cx == fromChunkX - ring || cx == fromChunkX + ring);
+                for (int cy = fromChunkY - ring; cy <= fromChunkY + ring; cy += (edgeColumn ? 1 : 2 * ring)){
+                    if (cy >= 0 && cy < chunksPerSide && chunkCount[(cx << chunksShift) | cy] > 0)
+                        found = scanChunk(cx, cy, fromX, fromY, excludeCell, out, count, found);
+                }
+            }
+        }
+        return found;
+    }
+    
+    /**
+     * Check every cell of one chunk that is in the set, keeping the closest ones found so far in order.
+     * @param cx Chunk X.
+     * @param cy Chunk Y.
+     * @param fromX Column to measure distance from.
+     * @param fromY Row to measure distance from.
+     * @param excludeCell A cell to leave out of the results, or -1.
+     * @param out Closest cells found so far.
+     * @param count Maximum number of cells to find.
+     * @param found Number of cells found so far.
+     * @return The new number of cells found.
+     */
+    private int scanChunk(int cx, int cy, int fromX, int fromY, int excludeCell, int[] out, int count, int found) {
+        int chunk = (cx << chunksShift) | cy;
+        int firstWord = chunk * WORDS_PER_CHUNK;
+        for (int word = firstWord; word < firstWord + WORDS_PER_CHUNK; word++){
+            for (long bits = members[word]; bits != 0; bits &= bits - 1){
+                int cell = (word << 6) + Long.numberOfTrailingZeros(bits);
+                if (cell == excludeCell)
+                    continue;
+                int x = (cx << Chunk.SHIFT) | ((cell >>> Chunk.SHIFT) & Chunk.MASK);
+                int y = (cy << Chunk.SHIFT) | (cell & Chunk.MASK);
+                int distance = Math.abs(x - fromX) + Math.abs(y - fromY);
+                if (found == count && distance >= foundDistance[found - 1])
+                    continue;
+                //Insert in order, dropping the farthest if the list is full.
+                int i = (found == count) ? found - 1 : found++;
+                while (i > 0 && foundDistance[i - 1] > distance){
+                    foundDistance[i] = foundDistance[i - 1];
+                    out[i] = out[i - 1];
+                    i--;
+                }
+                foundDistance[i] = distance;
+                out[i] = cell;
+            }
+        }
+        return found;
+    }
+}
+
+/**
+ * AntMessage class holds what one ant tells another during communication.
+ * <p>
+ * Besides who the sender is, a message carries a set of spots from the sender's grid, and the knowledge versions they bring the receiver from and to.
+ * A base version of 0 means the message carries the sender's whole known map.
+ * <p>
+ * {@link MessageCodec} turns this class into a byte[] and back.
+ * 
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+class AntMessage {
+    
+    int age;
+    int year;
+    int role;
+    int id;
+    
+    //Does this message carry spots from the sender's grid.
+    boolean hasGrid = false;
+    //Sender knowledge version this message brings the receiver up to, and the version it builds on.
+    int version = 0, baseVersion = 0;
+    //Span of the sender's map, which the spot locations are packed in.  See {@link AntKnowledge#cell}.
+    int span = 0;
+    //Spots carried by this message, with each spot's location stored as a cell of the sender's span.
+    int numSpots = 0;
+    int[] cells;
+    int[] food;
+    boolean[] traversable;
+    int[] yearViewed;
+    int[] yearVisited;
+    //The spots are grouped by the {@link Chunk} of the sender's map they are in.  For each group: the chunk, the index of its first spot,
+    //the newest years in it, and which of its spots were viewed and visited, as CELLS / 64 words per group.
+    int numGroups = 0;
+    int[] groupChunk = new int[8], groupStart = new int[8], groupYearViewed = new int[8], groupYearVisited = new int[8];
+    long[] groupViewed = new long[8 * Chunk.CELLS / 64], groupVisited = new long[8 * Chunk.CELLS / 64];
+    //Ids of ants whose updates the sender missed, and who should send their whole map.
+    int[] resync = null;
+    //Digest of the sender's map, sent with a resync request so the friends can leave out the chunks the sender already has.
+    ChunkDigest digest = null;
+    //From a worker: the food the Traffic Cop sent it for, relative to home, how much food it believes is there, -1 if it doesn't know the spot,
+    //whether it is carrying some home, and whether it has stood on the spot.
+    boolean hasTarget = false, holdingFood = false, atTarget = false;
+    int targetX = 0, targetY = 0, targetFood = 0;
+    //From the Traffic Cop: food it sent workers for, as the worker's id and the food's location relative to home, three ints each.
+    int[] assignments = null;
+    
+    /**
+     * Initialize an empty {@link AntMessage}, to be filled in by {@link MessageCodec}.
+     */
+    public AntMessage() {
+    }
+    
+    /**
+     * Initialize the {@link AntMessage} with the sender's details, but no spots.
+     * @param sender Knowledge of the sending ant.
+     */
+    public AntMessage(AntKnowledge sender) {
+        age = sender.age;
+        year = sender.year;
+        role = sender.role;
+        id = sender.id;
+    }
+    
+    /**
+     * Make room for the spots this message will carry, reusing the current arrays if they are big enough.
+     * @param count Number of spots.
+     */
+    public void allocateSpots(int count) {
+        numSpots = 0;
+        numGroups = 0;
+        if (cells != null && cells.length >= count)
+            return;
+        cells = new int[count];
+        food = new int[count];
+        traversable = new boolean[count];
+        yearViewed = new int[count];
+        yearVisited = new int[count];
+    }
+    
+    /**
+     * Add a spot to this message.
+     * <p>
+     * Spots should be added chunk by chunk, so each chunk makes one group.
+     * @param cell Location of the spot, as a cell of the sender's span.
+     * @param p_food Amount of food.
+     * @param isTraversable Whether the spot is traversable.
+     * @param p_yearViewed Year the spot was last viewed.
+     * @param p_yearVisited Year the spot was last visited.
+     */
+    public void addSpot(int cell, int p_food, boolean isTraversable, int p_yearViewed, int p_yearVisited) {
+        int chunk = cell >>> Chunk.SPOT_BITS;
+        if (numGroups == 0 || groupChunk[numGroups - 1] != chunk)
+            startGroup(chunk);
+        int group = numGroups - 1, spot = cell & (Chunk.CELLS - 1), word = group * (Chunk.CELLS / 64) + (spot >>> 6);
+        if (p_yearViewed >= 0){
+            groupViewed[word] |= (1L << spot);
+            groupYearViewed[group] = Math.max(groupYearViewed[group], p_yearViewed);
+        }
+        if (p_yearVisited >= 0){
+            groupVisited[word] |= (1L << spot);
+            groupYearVisited[group] = Math.max(groupYearVisited[group], p_yearVisited);
+        }
+        cells[numSpots] = cell;
+        food[numSpots] = p_food;
+        traversable[numSpots] = isTraversable;
+        yearViewed[numSpots] = p_yearViewed;
+        yearVisited[numSpots] = p_yearVisited;
+        numSpots++;
+    }
+    
+    /**
+     * Start a new group of spots, growing the group arrays if needed.
+     * @param chunk The chunk of the sender's map the group is in.
+     */
+    private void startGroup(int chunk) {
+        if (numGroups == groupChunk.length){
+            int size = numGroups * 2;
+            groupChunk = Arrays.copyOf(groupChunk, size);
+            groupStart = Arrays.copyOf(groupStart, size);
+            groupYearViewed = Arrays.copyOf(groupYearViewed, size);
+            groupYearVisited = Arrays.copyOf(groupYearVisited, size);
+            groupViewed = Arrays.copyOf(groupViewed, size * (Chunk.CELLS / 64));
+            groupVisited = Arrays.copyOf(groupVisited, size * (Chunk.CELLS / 64));
+        }
+        groupChunk[numGroups] = chunk;
+        groupStart[numGroups] = numSpots;
+        groupYearViewed[numGroups] = -1;
+        groupYearVisited[numGroups] = -1;
+        Arrays.fill(groupViewed, numGroups * (Chunk.CELLS / 64), (numGroups + 1) * (Chunk.CELLS / 64), 0L);
+        Arrays.fill(groupVisited, numGroups * (Chunk.CELLS / 64), (numGroups + 1) * (Chunk.CELLS / 64), 0L);
+        numGroups++;
+    }
+    
+    /**
+     * Index just past the last spot of a group.
+     * @param group The group.
+     * @return The end of the group's spots.
+     */
+    public int groupEnd(int group) {
+        return (group + 1 < numGroups) ? groupStart[group + 1] : numSpots;
+    }
+}
+
+/**
+ * MessageCodec class is the compact binary wire format for {@link AntMessage}.
+ * <p>
+ * The format is a version byte, a flags byte, and the header fields as varints.  Spots are written in groups, one per {@link Chunk}:
+ * the gap from the previous group's chunk and the number of spots, then for each spot its place in the chunk as one byte,
+ * one flags byte holding traversable and which years are known, then the food and the years.
+ * Years are written as how long before the message's year they are, so they usually fit in a single byte.
+ * Spot locations are cells of the sender's map span, which is one of the header fields, so the receiver can place them in its own span.
+ * A resync request may be followed by a {@link ChunkDigest}: its span, then each chunk as the gap from the previous one and a 4 byte hash.
+ * A worker's target is its location and food, and the Traffic Cop's assignments are a count followed by the id and location of each.
+ * <p>
+ * Messages are written into a buffer that is reused between sends, and decoded into a reused {@link AntMessage}.
+ * 
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+class MessageCodec {
+    /** Version of the wire format, bumped whenever the layout changes. */
+    static final int FORMAT_VERSION = 6;
+    
+    //Message flags
+    private static final int HAS_GRID = 1, HAS_RESYNC = 2, HAS_DIGEST = 4, HAS_TARGET = 8, HOLDING_FOOD = 16, HAS_ASSIGNMENTS = 32, AT_TARGET = 64;
+    //Spot flags
+    private static final int TRAVERSABLE = 1, VIEWED = 2, VISITED = 4;
+    
+    /** Most bytes a group of spots takes before its spots: the gap from the previous chunk, and the number of spots. */
+    static final int GROUP_HEADER_SIZE = 6;
+    
+    //Buffer messages are encoded into, and the write position in it.
+    private byte[] buffer = new byte[512];
+    private int position = 0;
+    //Data being decoded, and the read position in it.
+    private byte[] input;
+    private int readPosition = 0;
+    //Message decoded into, reused between receives.
+    private AntMessage decoded = new AntMessage();
+    
+    /**
+     * Encode a message.
+     * @param message The {@link AntMessage} to encode.
+     * @return The encoded message.
+     */
+    public byte[] encode(AntMessage message) {
+        position = 0;
+        writeByte(FORMAT_VERSION);
+        writeByte((message.hasGrid ? HAS_GRID : 0) | (message.resync != null ? HAS_RESYNC : 0) | (message.digest != null ? HAS_DIGEST : 0)
+                | (message.hasTarget ? HAS_TARGET : 0) | (message.hasTarget && message.holdingFood ? HOLDING_FOOD : 0)
+                | (message.hasTarget && message.atTarget ? AT_TARGET : 0) | (message.assignments != null ? HAS_ASSIGNMENTS : 0));
+        writeVarint(message.role);
+        writeSigned(message.age);
+        writeSigned(message.year);
+        writeSigned(message.id);
+        
+        if (message.hasGrid){
+            writeVarint(message.version);
+            writeVarint(message.baseVersion);
+            writeVarint(message.span);
+            writeVarint(message.numSpots);
+            writeVarint(message.numGroups);
+            int lastChunk = -1;
+            for (int group=0; group < message.numGroups; group++){
+                writeSigned(message.groupChunk[group] - lastChunk);
+                lastChunk = message.groupChunk[group];
+                int end = message.groupEnd(group);
+                writeVarint(end - message.groupStart[group]);
+                for (int i=message.groupStart[group]; i < end; i++){
+                    writeByte(message.cells[i] & (Chunk.CELLS - 1));
+                    boolean viewed = message.yearViewed[i] >= 0, visited = message.yearVisited[i] >= 0;
+                    writeByte((message.traversable[i] ? TRAVERSABLE : 0) | (viewed ? VIEWED : 0) | (visited ? VISITED : 0));
+                    if (viewed)
+                        writeSigned(message.year - message.yearViewed[i]);
+                    if (visited){
+                        writeSigned(message.year - message.yearVisited[i]);
+                        writeSigned(message.food[i]);
+                    }
+                }
+            }
+        }
+        
+        if (message.resync != null){
+            writeVarint(message.resync.length);
+            for (int friendId : message.resync)
+                writeSigned(friendId);
+        }
+        
+        if (message.digest != null){
+            ChunkDigest digest = message.digest;
+            writeVarint(digest.span);
+            writeVarint(digest.chunks.length);
+            int lastChunk = -1;
+            for (int i=0; i < digest.chunks.length; i++){
+                writeVarint(digest.chunks[i] - lastChunk);
+                lastChunk = digest.chunks[i];
+                for (int shift = 0; shift < 32; shift += 8)
+                    writeByte(digest.hashes[i] >>> shift);
+            }
+        }
+        
+        if (message.hasTarget){
+            writeSigned(message.targetX);
+            writeSigned(message.targetY);
+            writeSigned(message.targetFood);
+        }
+        
+        if (message.assignments != null){
+            writeVarint(message.assignments.length / 3);
+            for (int i=0; i + 2 < message.assignments.length; i += 3){
+                writeSigned(message.assignments[i]);
+                writeSigned(message.assignments[i + 1]);
+                writeSigned(message.assignments[i + 2]);
+            }
+        }
+        return Arrays.copyOf(buffer, position);
+    }
+    
+    /**
+     * Decode a message.
+     * <p>
+     * The returned {@link AntMessage} is reused by the next call, so it should not be kept.
+     * @param data The encoded message.
+     * @return The decoded {@link AntMessage}.
+     * @throws IOException If the data is not a message in this format.
+     */
+    public AntMessage decode(byte[] data) throws IOException {
+        input = data;
+        readPosition = 0;
+        if (readByte() != FORMAT_VERSION)
+            throw new IOException("Unknown message format version");
+        int flags = readByte();
+        AntMessage message = decoded;
+        message.hasGrid = (flags & HAS_GRID) != 0;
+        message.role = readVarint();
+        message.age = readSigned();
+        message.year = readSigned();
+        message.id = readSigned();
+        message.numSpots = 0;
+        message.numGroups = 0;
+        message.resync = null;
+        message.digest = null;
+        message.hasTarget = (flags & HAS_TARGET) != 0;
+        message.holdingFood = (flags & HOLDING_FOOD) != 0;
+        message.atTarget = (flags & AT_TARGET) != 0;
+        message.assignments = null;
+        
+        if (message.hasGrid){
+            message.version = readVarint();
+            message.baseVersion = readVarint();
+            message.span = readVarint();
+            if (Integer.bitCount(message.span) != 1 || message.span > (1 << 15))
+                throw new IOException("Map span is not a power of two up to 32768");
+            int count = readVarint(), groups = readVarint();
+            if (count > data.length || groups > count)
+                throw new IOException("Spot count larger than the message");
+            message.allocateSpots(count);
+            int chunks = (message.span >> Chunk.SHIFT) * (message.span >> Chunk.SHIFT), chunk = -1;
+            for (int group=0; group < groups; group++){
+                chunk += readSigned();
+                int groupSize = readVarint();
+                if (chunk < 0 || chunk >= chunks)
+                    throw new IOException("Chunk outside the map span");
+                if (groupSize > count - message.numSpots)
+                    throw new IOException("More spots than the message holds");
+                for (int i=0; i < groupSize; i++){
+                    int cell = (chunk << Chunk.SPOT_BITS) | readByte();
+                    int spotFlags = readByte();
+                    int viewed = ((spotFlags & VIEWED) != 0) ? message.year - readSigned() : -1;
+                    int visited = -1, food = -1;
+                    if ((spotFlags & VISITED) != 0){
+                        visited = message.year - readSigned();
+                        food = readSigned();
+                    }
+                    message.addSpot(cell, food, (spotFlags & TRAVERSABLE) != 0, viewed, visited);
+                }
+            }
+            if (message.numSpots != count)
+                throw new IOException("Fewer spots than the message holds");
+        }
+        
+        if ((flags & HAS_RESYNC) != 0){
+            int count = readVarint();
+            if (count > data.length)
+                throw new IOException("Resync count larger than the message");
+            message.resync = new int[count];
+            for (int i=0; i < count; i++)
+                message.resync[i] = readSigned();
+        }
+        
+        if ((flags & HAS_DIGEST) != 0){
+            int span = readVarint(), count = readVarint();
+            if (Integer.bitCount(span) != 1 || span < 2 * Chunk.SIZE || span > (1 << 15))
+                throw new IOException("Digest span is not a power of two from 32 to 32768");
+            if (count > data.length)
+                throw new IOException("Digest count larger than the message");
+            int chunks = (span >> Chunk.SHIFT) * (span >> Chunk.SHIFT), chunk = -1;
+            int[] digestChunks = new int[count], hashes = new int[count];
+            for (int i=0; i < count; i++){
+                int gap = readVarint();
+                chunk += gap;
+                if (gap < 1 || chunk >= chunks)
+                    throw new IOException("Digest chunk out of order or outside the map span");
+                digestChunks[i] = chunk;
+                for (int shift = 0; shift < 32; shift += 8)
+                    hashes[i] |= readByte() << shift;
+            }
+            //A new digest every time, since the ant keeps it until its next message.
+            message.digest = new ChunkDigest(span, digestChunks, hashes);
+        }
+        
+        if (message.hasTarget){
+            message.targetX = readSigned();
+            message.targetY = readSigned();
+            message.targetFood = readSigned();
+        }
+        
+        if ((flags & HAS_ASSIGNMENTS) != 0){
+            int count = readVarint();
+            if (count > data.length)
+                throw new IOException("Assignment count larger than the message");
+            message.assignments = new int[count * 3];
+            for (int i=0; i < message.assignments.length; i++)
+                message.assignments[i] = readSigned();
+        }
+        return message;
+    }
+    
+    /**
+     * Number of bytes a spot takes in a message, not counting its group header.
+     * @param year Year of the message.
+     * @param p_food Amount of food.
+     * @param p_yearViewed Year the spot was last viewed, -1 if never.
+     * @param p_yearVisited Year the spot was last visited, -1 if never.
+     * @return Size in bytes.
+     */
+    static int spotSize(int year, int p_food, int p_yearViewed, int p_yearVisited) {
+        int size = 2;
+        if (p_yearViewed >= 0)
+            size += signedSize(year - p_yearViewed);
+        if (p_yearVisited >= 0)
+            size += signedSize(year - p_yearVisited) + signedSize(p_food);
+        return size;
+    }
+    
+    /**
+     * Number of bytes a zigzag varint takes.
+     * @param value The value.
+     * @return Size in bytes, 1 to 5.
+     */
+    private static int signedSize(int value) {
+        int zigzag = (value << 1) ^ (value >> 31);
+        return (zigzag == 0) ? 1 : (38 - Integer.numberOfLeadingZeros(zigzag)) / 7;
+    }
+    
+    /**
+     * Write one byte, growing the buffer if needed.
+     * @param b Byte to write.
+     */
+    private void writeByte(int b) {
+        if (position == buffer.length)
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        buffer[position++] = (byte)b;
+    }
+    
+    /**
+     * Write an unsigned varint, 7 bits per byte.
+     * @param value Value to write.
+     */
+    private void writeVarint(int value) {
+        while ((value & ~0x7F) != 0){
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+    
+    /**
+     * Write a signed value as a zigzag varint, so small negative numbers stay small.
+     * @param value Value to write.
+     */
+    private void writeSigned(int value) {
+        writeVarint((value << 1) ^ (value >> 31));
+    }
+    
+    /**
+     * Read one byte.
+     * @return The byte, as 0 to 255.
+     * @throws IOException If the message ended early.
+     */
+    private int readByte() throws IOException {
+        if (readPosition >= input.length)
+            throw new IOException("Message ended early");
+        return input[readPosition++] & 0xFF;
+    }
+    
     /**
-     * Two moves are the same if they represent the same {@link Point}
-     * @param compareMove The move to compare to this one.
-     * @return True or False if the two moves represent the same {@link Point}.
+     * Read an unsigned varint.
+     * @return The value.
+     * @throws IOException If the message ended early or the varint is too long.
      */
-    public boolean isEqualTo (Move compareMove){
-        return (this.movePoint.equals(compareMove.movePoint));
+    private int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7){
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed varint");
     }
     
     /**
-     * Get the cost from the source to the Parent point, plus the estimated cost from Move point to target.
-     * @return Total cost.
+     * Read a zigzag varint.
+     * @return The signed value.
+     * @throws IOException If the message ended early or the varint is too long.
      */
-    public int getTotalCost(){
-        return (sourceCost + destCost);
+    private int readSigned() throws IOException {
+        int value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
     }
+}
+
+/**
+ * RouteSearch class holds the working state of the A* search used by {@link AntBrain#findRoute}.
+ * <p>
+ * The open list is a binary heap of cells with a heap position kept per cell, so finding a cheaper path to an open cell
+ * is a decrease-key instead of a re-sort.  Open and closed cells are marked with generation stamps, so nothing has to be cleared between searches.
+ * <p>
+ * The arrays are sized to the span of the grid, and one RouteSearch is shared by all ants running on a thread.
+ * 
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+class RouteSearch {
+    //Per cell: cost from the start, estimated total cost to the target, and the cell it was reached from.
+    private int[] sourceCost = new int[0], totalCost = new int[0], parent = new int[0];
+    //Per cell: position in the heap while the cell is open.
+    private int[] heapPosition = new int[0];
+    //Per cell: generation in which the cell was last opened, and last closed.
+    private int[] openedIn = new int[0], closedIn = new int[0];
+    private int generation = 0;
+    //The open list, a binary heap of cells ordered by total cost.
+    private int[] heap = new int[0];
+    private int heapSize = 0;
+    //log2 of the chunks per side of the span being searched.
+    private int chunksShift;
+    //Hierarchical search: steps inside their chunks from the start and from the target, a search inside one chunk, and the route being refined.
+    private final int[] startDistance = new int[Chunk.CELLS], targetDistance = new int[Chunk.CELLS];
+    private final int[] localDistance = new int[Chunk.CELLS], localFrom = new int[Chunk.CELLS], localQueue = new int[Chunk.CELLS];
+    private int[] path = new int[64];
+    //Landmark search: the knowledge holding the landmark tables, or null for the plain estimate, and the target's distance to each landmark.
+    private AntKnowledge landmarks = null;
+    private final int[] targetLandmark = new int[AntKnowledge.LANDMARKS + 1];
+    //Bidirectional search: the half searching back from the target, with arrays of its own.
+    private RouteSearch backward = null;
     
-    /*
-     * Setters for costs
+    /** Number of cells expanded by the last search. */
+    int expanded = 0;
+    
+    /**
+     * Run A* from the start cell to the target cell over known traversable cells.
+     * @param knowledge Knowledge holding the map.
+     * @param start Cell to route from.
+     * @param target Cell to route to.
+     * @return True if the target was reached, in which case {@link #parentOf} leads back from the target to the start.
      */
-    public void setCosts(int p_sourceCost, int p_destCost){
-        sourceCost = p_sourceCost;
-        destCost = p_destCost;
+    public boolean search(AntKnowledge knowledge, int start, int target) {
+        prepare(knowledge.span);
+        expanded = 0;
+        
+        open(start, 0, estimate(start, target), -1);
+        while (heapSize > 0) {
+            int current = pop();
+            if (current == target)
+                return true;
+            closedIn[current] = generation;
+            expanded++;
+            
+            int neighbor;
+            if ((neighbor = knowledge.stepX(current, 1)) >= 0) relax(knowledge, current, neighbor, target);
+            if ((neighbor = knowledge.stepX(current, -1)) >= 0) relax(knowledge, current, neighbor, target);
+            if ((neighbor = knowledge.stepY(current, 1)) >= 0) relax(knowledge, current, neighbor, target);
+            if ((neighbor = knowledge.stepY(current, -1)) >= 0) relax(knowledge, current, neighbor, target);
+        }
+        return false;
     }
     
     /**
-     * Override toString for Move objects.
-     * @return String representation of Move object.
+     * A* from the start cell to the target cell using landmarks (ALT): the estimate is the larger of the direct distance
+     * and, for each landmark of {@link AntKnowledge#landmarkDistance}, how much closer to it one cell is than the other.
+     * A route can't be shorter than that difference, so the estimate still never overshoots and the routes are still the shortest,
+     * but around walls it is much closer to the truth and far fewer cells are expanded.
+     * <p>
+     * If the landmarks show the start and target can't reach each other, no search is run at all.
+     * @param knowledge Knowledge holding the map.
+     * @param start Cell to route from.
+     * @param target Cell to route to.
+     * @return True if the target was reached, in which case {@link #parentOf} leads back from the target to the start.
      */
-    @Override
-    public String toString(){
-       return ("MOVE: Point:" + this.movePoint + " - SourceCost:" + this.sourceCost + 
-               " - DestCost:" + this.destCost + " - ParentPoint:" + 
-               ((this.parent == null) ? "null" : this.parent.movePoint)); 
+    public boolean searchLandmarks(AntKnowledge knowledge, int start, int target) {
+        for (int landmark = 0; landmark <= AntKnowledge.LANDMARKS; landmark++)
+            targetLandmark[landmark] = knowledge.landmarkDistance(target, landmark);
+        //A known spot that can reach a landmark the target can't, or the other way around, can't reach the target either.
+        if (knowledge.isTraversable(start))
+            for (int landmark = 0; landmark <= AntKnowledge.LANDMARKS; landmark++)
+                if ((targetLandmark[landmark] < 0) != (knowledge.landmarkDistance(start, landmark) < 0)){
+                    expanded = 0;
+                    return false;
+                }
+        
+        landmarks = knowledge;
+        boolean found = search(knowledge, start, target);
+        landmarks = null;
+        return found;
+    }
+    
+    /**
+     * Bidirectional A* from the start cell to the target cell over known traversable cells: one search runs out from the start,
+     * another back from the target, and each turn the one with fewer open cells expands its cheapest.
+     * <p>
+     * Both halves estimate with half the difference of the direct distances to the target and to the start, so they agree
+     * on the cost of every route and each estimate stays consistent.  Costs are doubled to keep the halves whole.
+     * Every time a cell is reached that the other half has reached too, a route through it is known, and the search stops
+     * once the two cheapest open cells can't add up to anything shorter than the best of those, so the route is still the shortest.
+     * The parents of the half from the target are then turned around, so {@link #parentOf} leads from the target to the start as after {@link #search}.
+     * @param knowledge Knowledge holding the map.
+     * @param start Cell to route from.
+     * @param target Cell to route to.
+     * @return True if the target was reached, in which case {@link #parentOf} leads back from the target to the start.
+     */
+    public boolean searchBidirectional(AntKnowledge knowledge, int start, int target) {
+        prepare(knowledge.span);
+        expanded = 0;
+        if (start == target)
+            return true;
+        if (!knowledge.isTraversable(target))
+            return false;
+        if (backward == null)
+            backward = new RouteSearch();
+        backward.prepare(knowledge.span);
+        
+        int direct = calculateCost(start, target);
+        open(start, 0, direct, -1);
+        backward.open(target, 0, direct, -1);
+        //Doubled cost of the shortest route found so far, and the cell where its halves meet.
+        int best = Integer.MAX_VALUE, meet = -1;
+        while (heapSize > 0 && backward.heapSize > 0 && totalCost[heap[0]] + backward.totalCost[backward.heap[0]] < best) {
+            boolean forward = heapSize <= backward.heapSize;
+            RouteSearch side = forward ? this : backward, other = forward ? backward : this;
+            int current = side.pop();
+            side.closedIn[current] = side.generation;
+            expanded++;
+            
+            for (int i = 0; i < 4; i++){
+                int neighbor = (i < 2) ? knowledge.stepX(current, (i == 0) ? 1 : -1) : knowledge.stepY(current, (i == 2) ? 1 : -1);
+                if (neighbor < 0 || side.closedIn[neighbor] == side.generation)
+                    continue;
+                //Going back from the target, the cell stepped to is the one stepped from going forward, which only the start may be without knowing.
+                if (!knowledge.isTraversable(neighbor) && (forward || neighbor != start))
+                    continue;
+                int cost = side.sourceCost[current] + 2;
+                int potential = calculateCost(neighbor, target) - calculateCost(start, neighbor);
+                side.offer(neighbor, cost, cost + (forward ? potential : -potential), current);
+                if (other.openedIn[neighbor] == other.generation && side.sourceCost[neighbor] + other.sourceCost[neighbor] < best){
+                    best = side.sourceCost[neighbor] + other.sourceCost[neighbor];
+                    meet = neighbor;
+                }
+            }
+        }
+        if (meet < 0)
+            return false;
+        
+        //Turn the half from the target around.
+        for (int cell = backward.parent[meet], previous = meet; cell >= 0; previous = cell, cell = backward.parent[cell])
+            parent[cell] = previous;
+        return true;
+    }
+    
+    /**
+     * Jump Point Search from the start cell to the target cell over known traversable cells, for a grid of four directions where every step costs the same.
+     * <p>
+     * Of all the shortest routes, only the ones that move vertically first and only turn from horizontal to vertical when they have to are searched.
+     * Moving horizontally, that is just past a blocked spot beside the way, where a vertical step couldn't have been taken one cell earlier.
+     * Moving vertically, a turn is always allowed, so every vertical step looks along the row both ways.
+     * Only the cells where a route may turn, the jump points, go on the open list; the cells in between are just scanned.
+     * <p>
+     * The parent of each jump point is the jump point before it, in a straight line, rather than a neighbor.
+     * @param knowledge Knowledge holding the map.
+     * @param start Cell to route from.
+     * @param target Cell to route to.
+     * @return True if the target was reached, in which case {@link #parentOf} leads back from the target to the start, one straight line at a time.
+     */
+    public boolean searchJumpPoints(AntKnowledge knowledge, int start, int target) {
+        prepare(knowledge.span);
+        expanded = 0;
+        
+        open(start, 0, calculateCost(start, target), -1);
+        while (heapSize > 0) {
+            int current = pop();
+            if (current == target)
+                return true;
+            closedIn[current] = generation;
+            expanded++;
+            
+            int from = parent[current];
+            int dx = (from < 0) ? 0 : Integer.signum(Chunk.columnOf(current, chunksShift) - Chunk.columnOf(from, chunksShift));
+            int dy = (from < 0) ? 0 : Integer.signum(Chunk.rowOf(current, chunksShift) - Chunk.rowOf(from, chunksShift));
+            if (dx != 0){
+                //Moving horizontally: keep going, and turn only where it is forced.
+                jumpTo(knowledge, current, jumpHorizontal(knowledge, current, dx, target), target);
+                for (int vy = -1; vy <= 1; vy += 2)
+                    if (isOpen(knowledge, knowledge.stepY(current, vy)) && !isOpen(knowledge, knowledge.stepY(knowledge.stepX(current, -dx), vy)))
+                        jumpTo(knowledge, current, jumpVertical(knowledge, current, vy, target), target);
+            }
+            else{
+                //Moving vertically, or at the start: keep going, and turn either way.
+                if (from < 0){
+                    jumpTo(knowledge, current, jumpVertical(knowledge, current, 1, target), target);
+                    jumpTo(knowledge, current, jumpVertical(knowledge, current, -1, target), target);
+                }
+                else
+                    jumpTo(knowledge, current, jumpVertical(knowledge, current, dy, target), target);
+                jumpTo(knowledge, current, jumpHorizontal(knowledge, current, 1, target), target);
+                jumpTo(knowledge, current, jumpHorizontal(knowledge, current, -1, target), target);
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Hierarchical A* (HPA*) from the start cell to the target cell over known traversable cells, with each {@link Chunk} as a cluster.
+     * <p>
+     * The search runs over the cluster graphs kept by {@link AntKnowledge#cluster}: from the start to the entrances of its chunk,
+     * between entrances of the same chunk, across to the matching entrance of the next chunk, and from the entrances of the target's chunk to the target.
+     * So its work grows with the number of chunks the route crosses rather than with the area of the map.
+     * Each leg inside a chunk is then found again spot by spot, and the parents are rewritten to lead back one step at a time.
+     * <p>
+     * Routes found this way are usually a little longer than the shortest, as they pass through the middle of each entrance.
+     * @param knowledge Knowledge holding the map.
+     * @param start Cell to route from.
+     * @param target Cell to route to.
+     * @return True if the target was reached, in which case {@link #parentOf} leads back from the target to the start.
+     */
+    public boolean searchHierarchical(AntKnowledge knowledge, int start, int target) {
+        prepare(knowledge.span);
+        expanded = 0;
+        
+        Chunk startChunk = knowledge.cluster(start, localDistance, localQueue);
+        Chunk targetChunk = knowledge.cluster(target, localDistance, localQueue);
+        if (startChunk == null || targetChunk == null || (start != target && !knowledge.isTraversable(target)))
+            return false;
+        startChunk.localSearch(start & (Chunk.CELLS - 1), startDistance, null, localQueue, -1);
+        targetChunk.localSearch(target & (Chunk.CELLS - 1), targetDistance, null, localQueue, -1);
+        
+        open(start, 0, calculateCost(start, target), -1);
+        while (heapSize > 0) {
+            int current = pop();
+            if (current == target){
+                refine(knowledge, start, target);
+                return true;
+            }
+            closedIn[current] = generation;
+            expanded++;
+            
+            Chunk chunk = knowledge.cluster(current, localDistance, localQueue);
+            int base = current & ~(Chunk.CELLS - 1), spot = current & (Chunk.CELLS - 1);
+            int count = chunk.entrances.length;
+            if (current == start)
+                for (int j = 0; j < count; j++)
+                    if (startDistance[chunk.entrances[j]] >= 0)
+                        reach(current, base | chunk.entrances[j], startDistance[chunk.entrances[j]], target);
+            //A corner spot can be an entrance on two edges.
+            for (int i = chunk.entranceIndex(spot, 0); i >= 0; i = chunk.entranceIndex(spot, i + 1)){
+                for (int j = 0; j < count; j++)
+                    if (j != i && chunk.entranceDistance[i * count + j] >= 0)
+                        reach(current, base | chunk.entrances[j], chunk.entranceDistance[i * count + j], target);
+                int side = chunk.entranceSide[i];
+                int across = (AntBrain.STEP_X[side] != 0) ? knowledge.stepX(current, AntBrain.STEP_X[side]) : knowledge.stepY(current, AntBrain.STEP_Y[side]);
+                if (across >= 0)
+                    reach(current, across, 1, target);
+            }
+            if (base == (target & ~(Chunk.CELLS - 1)) && targetDistance[spot] >= 0)
+                reach(current, target, targetDistance[spot], target);
+        }
+        return false;
+    }
+    
+    /**
+     * Turn the route found by {@link #searchHierarchical}, from cluster graph node to node, into one step at a time.
+     * <p>
+     * Legs inside a chunk are searched again inside the chunk, and if the route happens to come back to a cell, the loop is cut out.
+     * @param knowledge Knowledge holding the map.
+     * @param start Cell the route starts at.
+     * @param target Cell the route ends at.
+     */
+    private void refine(AntKnowledge knowledge, int start, int target) {
+        //The nodes, from the start.
+        int nodes = 0;
+        for (int cell = target; cell >= 0; cell = parent[cell]){
+            if (nodes == path.length)
+                path = Arrays.copyOf(path, nodes * 2);
+            path[nodes++] = cell;
+        }
+        int[] node = Arrays.copyOf(path, nodes);
+        
+        //Every cell of the route, with its position on the route kept in heapPosition to find loops.
+        newGeneration();
+        int size = 0;
+        size = addToPath(start, size);
+        for (int n = nodes - 2; n >= 0; n--){
+            int from = node[n + 1], to = node[n];
+            int base = from & ~(Chunk.CELLS - 1);
+            if (base != (to & ~(Chunk.CELLS - 1))){
+                size = addToPath(to, size);
+                continue;
+            }
+            Chunk chunk = knowledge.cluster(from, localDistance, localQueue);
+            chunk.localSearch(from & (Chunk.CELLS - 1), localDistance, localFrom, localQueue, to & (Chunk.CELLS - 1));
+            //Walk back from the end of the leg, then add the spots from its start.
+            int legStart = size;
+            for (int spot = to & (Chunk.CELLS - 1); spot != (from & (Chunk.CELLS - 1)); spot = localFrom[spot]){
+                if (size == path.length)
+                    path = Arrays.copyOf(path, size * 2);
+                path[size++] = base | spot;
+            }
+            int[] leg = Arrays.copyOfRange(path, legStart, size);
+            size = legStart;
+            for (int j = leg.length - 1; j >= 0; j--)
+                size = addToPath(leg[j], size);
+        }
+        parent[path[0]] = -1;
+        for (int j = 1; j < size; j++)
+            parent[path[j]] = path[j - 1];
+    }
+    
+    /**
+     * Add a cell to the end of the route being refined, cutting out the loop if the route was already there.
+     * @param cell The cell.
+     * @param size Cells on the route so far.
+     * @return Cells on the route now.
+     */
+    private int addToPath(int cell, int size) {
+        int at = heapPosition[cell];
+        if (openedIn[cell] == generation && at < size && path[at] == cell)
+            return at + 1;
+        if (size == path.length)
+            path = Arrays.copyOf(path, size * 2);
+        path[size] = cell;
+        heapPosition[cell] = size;
+        openedIn[cell] = generation;
+        return size + 1;
+    }
+    
+    /**
+     * Scan along a row from a cell to the next jump point: the target, or a cell with a forced turn.
+     * @param knowledge Knowledge holding the map.
+     * @param cell Cell to scan from.
+     * @param dx Direction along the row, 1 or -1.
+     * @param target Cell to route to.
+     * @return The jump point, or -1 if the row runs into a blocked spot first.
+     */
+    private int jumpHorizontal(AntKnowledge knowledge, int cell, int dx, int target) {
+        while (true){
+            int next = knowledge.stepX(cell, dx);
+            if (!isOpen(knowledge, next))
+                return -1;
+            if (next == target)
+                return next;
+            for (int vy = -1; vy <= 1; vy += 2)
+                if (isOpen(knowledge, knowledge.stepY(next, vy)) && !isOpen(knowledge, knowledge.stepY(cell, vy)))
+                    return next;
+            cell = next;
+        }
+    }
+    
+    /**
+     * Scan along a column from a cell to the next jump point: the target, or a cell from which a scan along the row finds one.
+     * @param knowledge Knowledge holding the map.
+     * @param cell Cell to scan from.
+     * @param dy Direction along the column, 1 or -1.
+     * @param target Cell to route to.
+     * @return The jump point, or -1 if the column runs into a blocked spot first.
+     */
+    private int jumpVertical(AntKnowledge knowledge, int cell, int dy, int target) {
+        while (true){
+            int next = knowledge.stepY(cell, dy);
+            if (!isOpen(knowledge, next))
+                return -1;
+            if (next == target || jumpHorizontal(knowledge, next, 1, target) >= 0 || jumpHorizontal(knowledge, next, -1, target) >= 0)
+                return next;
+            cell = next;
+        }
+    }
+    
+    /**
+     * Open, or lower the cost of, a jump point found from the current one.
+     * @param knowledge Knowledge holding the map.
+     * @param current Jump point being expanded.
+     * @param jumpPoint Jump point found, or -1 for none.
+     * @param target Cell to route to.
+     */
+    private void jumpTo(AntKnowledge knowledge, int current, int jumpPoint, int target) {
+        if (jumpPoint >= 0)
+            reach(current, jumpPoint, calculateCost(current, jumpPoint), target);
+    }
+    
+    /**
+     * Open, or lower the cost of, a node some steps away from the current one.
+     * @param current Node being expanded.
+     * @param next Node reached.
+     * @param steps Steps from the current node to the next.
+     * @param target Cell to route to.
+     */
+    private void reach(int current, int next, int steps, int target) {
+        if (closedIn[next] == generation)
+            return;
+        int cost = sourceCost[current] + steps;
+        offer(next, cost, cost + calculateCost(next, target), current);
+    }
+    
+    /**
+     * Open a cell that isn't closed, or lower its cost if this way is cheaper.
+     * @param cell The cell.
+     * @param p_sourceCost Cost to get from the start to the cell this way.
+     * @param p_totalCost Source cost plus the estimated cost to the target.
+     * @param p_parent Cell it is reached from.
+     */
+    private void offer(int cell, int p_sourceCost, int p_totalCost, int p_parent) {
+        if (openedIn[cell] != generation)
+            open(cell, p_sourceCost, p_totalCost, p_parent);
+        else if (p_sourceCost < sourceCost[cell]) {
+            totalCost[cell] -= sourceCost[cell] - p_sourceCost;
+            sourceCost[cell] = p_sourceCost;
+            parent[cell] = p_parent;
+            siftUp(heapPosition[cell]);
+        }
+    }
+    
+    /**
+     * Is a cell on the map and known to be traversable.
+     * @param knowledge Knowledge holding the map.
+     * @param cell The cell, or -1 past the edge of the map.
+     * @return True if the cell can be walked on.
+     */
+    private static boolean isOpen(AntKnowledge knowledge, int cell) {
+        return cell >= 0 && knowledge.isTraversable(cell);
+    }
+    
+    /**
+     * Breadth first search from the start cell over known traversable cells, stopping at the first cell in the goal set.
+     * <p>
+     * Every step costs the same, so the first goal reached is the one with the shortest route, and nothing needs to be ordered.
+     * The heap array is used as a plain queue, and the search stops as soon as a goal is queued rather than when it comes off the queue.
+     * @param knowledge Knowledge holding the map.
+     * @param start Cell to search from.
+     * @param goals Cells to look for.
+     * @param excludeCell A cell that doesn't count as a goal, or -1.
+     * @return The closest goal cell, in which case {@link #parentOf} leads back from it to the start, or -1 if no goal can be reached.
+     */
+    public int searchNearest(AntKnowledge knowledge, int start, CellIndex goals, int excludeCell) {
+        prepare(knowledge.span);
+        expanded = 0;
+        if (goals.size() == 0)
+            return -1;
+        
+        if (start != excludeCell && goals.contains(start))
+            return start;
+        parent[start] = -1;
+        openedIn[start] = generation;
+        heap[heapSize++] = start;
+        for (int head = 0; head < heapSize; head++){
+            int current = heap[head];
+            expanded++;
+            
+            int neighbor;
+            if ((neighbor = knowledge.stepX(current, 1)) >= 0 && enqueue(knowledge, current, neighbor, goals, excludeCell)) return neighbor;
+            if ((neighbor = knowledge.stepX(current, -1)) >= 0 && enqueue(knowledge, current, neighbor, goals, excludeCell)) return neighbor;
+            if ((neighbor = knowledge.stepY(current, 1)) >= 0 && enqueue(knowledge, current, neighbor, goals, excludeCell)) return neighbor;
+            if ((neighbor = knowledge.stepY(current, -1)) >= 0 && enqueue(knowledge, current, neighbor, goals, excludeCell)) return neighbor;
+        }
+        return -1;
+    }
+    
+    /**
+     * Put a neighbor at the back of the breadth first queue, if it is traversable and hasn't been reached yet.
+     * @param knowledge Knowledge holding the map.
+     * @param current Cell being expanded.
+     * @param neighbor Neighboring cell.
+     * @param goals Cells being looked for.
+     * @param excludeCell A cell that doesn't count as a goal, or -1.
+     * @return True if the neighbor was queued and is a goal.
+     */
+    private boolean enqueue(AntKnowledge knowledge, int current, int neighbor, CellIndex goals, int excludeCell) {
+        if (openedIn[neighbor] == generation || !knowledge.isTraversable(neighbor))
+            return false;
+        parent[neighbor] = current;
+        openedIn[neighbor] = generation;
+        heap[heapSize++] = neighbor;
+        return neighbor != excludeCell && goals.contains(neighbor);
+    }
+    
+    /**
+     * The cell the given cell was reached from in the last search.
+     * @param cell A cell on the route.
+     * @return The previous cell, or -1 for the start.
+     */
+    public int parentOf(int cell) {
+        return parent[cell];
+    }
+    
+    /**
+     * Try to reach a neighbor through the current cell, opening it or lowering its cost.
+     * @param knowledge Knowledge holding the map.
+     * @param current Cell being expanded.
+     * @param neighbor Neighboring cell.
+     * @param target Cell to route to.
+     */
+    private void relax(AntKnowledge knowledge, int current, int neighbor, int target) {
+        if (closedIn[neighbor] == generation || !knowledge.isTraversable(neighbor))
+            return;
+        int cost = sourceCost[current] + 1;
+        if (openedIn[neighbor] != generation)
+            open(neighbor, cost, cost + estimate(neighbor, target), current);
+        else if (cost < sourceCost[neighbor]) {
+            //Decrease-key: the estimate to the target doesn't change, only the cost from the start.
+            totalCost[neighbor] -= sourceCost[neighbor] - cost;
+            sourceCost[neighbor] = cost;
+            parent[neighbor] = current;
+            siftUp(heapPosition[neighbor]);
+        }
+    }
+    
+    /**
+     * Estimate the steps from a cell to the target, with the landmarks if this is a landmark search.
+     * @param cell The cell.
+     * @param target Cell to route to.
+     * @return A number of steps no more than the shortest route.
+     */
+    private int estimate(int cell, int target) {
+        int estimate = calculateCost(cell, target);
+        if (landmarks != null)
+            for (int landmark = 0; landmark <= AntKnowledge.LANDMARKS; landmark++){
+                if (targetLandmark[landmark] < 0)
+                    continue;
+                int distance = landmarks.landmarkDistance(cell, landmark);
+                if (distance >= 0)
+                    estimate = Math.max(estimate, Math.abs(targetLandmark[landmark] - distance));
+            }
+        return estimate;
+    }
+    
+    /**
+     * Calculate the direct distance between two cells.
+     * @param s First cell.
+     * @param e Second cell.
+     * @return Distance between cells. Distance in X + distance in Y.
+     */
+    private int calculateCost(int s, int e) {
+        return (Math.abs(Chunk.columnOf(s, chunksShift) - Chunk.columnOf(e, chunksShift)) 
+                + Math.abs(Chunk.rowOf(s, chunksShift) - Chunk.rowOf(e, chunksShift)));
+    }
+    
+    /**
+     * Make sure the arrays fit the grid, and start a new generation.
+     * @param span Span of the map being searched.
+     */
+    private void prepare(int span) {
+        chunksShift = Integer.numberOfTrailingZeros(span >> Chunk.SHIFT);
+        int cells = span * span;
+        if (sourceCost.length < cells) {
+            sourceCost = new int[cells];
+            totalCost = new int[cells];
+            parent = new int[cells];
+            heapPosition = new int[cells];
+            openedIn = new int[cells];
+            closedIn = new int[cells];
+            heap = new int[cells];
+            generation = 0;
+        }
+        newGeneration();
+    }
+    
+    /**
+     * Start a new generation, so no cell counts as opened or closed.
+     */
+    private void newGeneration() {
+        if (generation == Integer.MAX_VALUE) {
+            Arrays.fill(openedIn, 0);
+            Arrays.fill(closedIn, 0);
+            generation = 0;
+        }
+        generation++;
+        heapSize = 0;
+    }
+    
+    /**
+     * Put a cell on the open list.
+     * @param cell The cell.
+     * @param p_sourceCost Cost to get from the start to this cell.
+     * @param p_totalCost Source cost plus the estimated cost to the target.
+     * @param p_parent Cell this one was reached from.
+     */
+    private void open(int cell, int p_sourceCost, int p_totalCost, int p_parent) {
+        sourceCost[cell] = p_sourceCost;
+        totalCost[cell] = p_totalCost;
+        parent[cell] = p_parent;
+        openedIn[cell] = generation;
+        heap[heapSize] = cell;
+        heapPosition[cell] = heapSize;
+        siftUp(heapSize++);
+    }
+    
+    /**
+     * Take the cheapest cell off the open list.
+     * @return The cell.
+     */
+    private int pop() {
+        int top = heap[0];
+        heapSize--;
+        if (heapSize > 0) {
+            heap[0] = heap[heapSize];
+            heapPosition[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+    
+    /**
+     * Ordering of the open list: lowest total cost first, and on a tie the cell closest to the target.
+     * @param a First cell.
+     * @param b Second cell.
+     * @return True if a should come off the open list before b.
+     */
+    private boolean before(int a, int b) {
+        if (totalCost[a] != totalCost[b])
+            return totalCost[a] < totalCost[b];
+        return sourceCost[a] > sourceCost[b];
+    }
+    
+    /**
+     * Move the cell at this heap position up until its parent comes before it.
+     * @param i Heap position.
+     */
+    private void siftUp(int i) {
+        int cell = heap[i];
+        while (i > 0) {
+            int up = (i - 1) >> 1;
+            if (!before(cell, heap[up]))
+                break;
+            heap[i] = heap[up];
+            heapPosition[heap[i]] = i;
+            i = up;
+        }
+        heap[i] = cell;
+        heapPosition[cell] = i;
+    }
+    
+    /**
+     * Move the cell at this heap position down until it comes before both children.
+     * @param i Heap position.
+     */
+    private void siftDown(int i) {
+        int cell = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize)
+                break;
+            if (child + 1 < heapSize && before(heap[child + 1], heap[child]))
+                child++;
+            if (!before(heap[child], cell))
+                break;
+            heap[i] = heap[child];
+            heapPosition[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = cell;
+        heapPosition[cell] = i;
     }
-
 }
 
 /**
  * Tracking performance for various segments of the MyAnt class.
  * <p>
  * This class contains many static methods and variables so they can track across all ants.
+ * Each segment is timed with {@link System#nanoTime()}, and the time is counted into a latency histogram for its category.
+ * The histogram buckets grow exponentially, 4 per power of two, so percentiles are accurate to within 25% from nanoseconds up to minutes.
+ * <p>
+ * The timers don't allocate, lock, or keep anything per ant, so they can stay on all the time.
+ * The counters are {@link LongAdder}s, which stripe themselves across threads if several ants run at once.
  * @author jessesmith
  */
 class PerfMonitor {
-    private static long[] totals =  new long[100];
-    private static boolean hasBeenSetup = false;
-    private static HashMap antData = new HashMap(50); //initialize with estimated number of ants
-    //private static ArrayList antData = new ArrayList();
-    private static int numCategories = 8;
-    static int METHOD_ANALYZE_SURROUNDINGS = 0, METHOD_SEND = 1, METHOD_RECEIVE = 2,
+    static final int METHOD_ANALYZE_SURROUNDINGS = 0, METHOD_SEND = 1, METHOD_RECEIVE = 2,
         METHOD_SEARCH = 3, METHOD_DO_WORK = 4, SEND_BUNDLE = 5, RECEIVE_LEARN = 6,
         RECEIVE_BUNDLE = 7;
-  
+    static final String[] CATEGORY_NAMES = {"METHOD_ANALYZE_SURROUNDINGS", "METHOD_SEND", "METHOD_RECEIVE",
+        "METHOD_SEARCH", "METHOD_DO_WORK", "SEND_BUNDLE", "RECEIVE_LEARN", "RECEIVE_BUNDLE"};
+    private static final int NUM_CATEGORIES = CATEGORY_NAMES.length;
+    
+    //Histogram buckets: 2^SUB_BITS buckets per power of two, enough of them to hold any long.
+    private static final int SUB_BITS = 2, SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int NUM_BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+    
+    //Per category: counts per bucket, number of samples, total nanos, and the slowest sample.
+    private static final LongAdder[][] buckets = new LongAdder[NUM_CATEGORIES][NUM_BUCKETS];
+    private static final LongAdder[] counts = new LongAdder[NUM_CATEGORIES];
+    private static final LongAdder[] totals = new LongAdder[NUM_CATEGORIES];
+    private static final AtomicLongArray maxes = new AtomicLongArray(NUM_CATEGORIES);
+    static {
+        for (int category = 0; category < NUM_CATEGORIES; category++) {
+            counts[category] = new LongAdder();
+            totals[category] = new LongAdder();
+            for (int bucket = 0; bucket < NUM_BUCKETS; bucket++)
+                buckets[category][bucket] = new LongAdder();
+        }
+    }
+    
     /**
-     * Used to register a new ant into the hashmap after creation.
-     * @param antId The hashcode of the new ant.
+     * Starts a clock to track a segment of code.
+     * @return The start time, to hand back to {@link #stopClock(int, long)}.
      */
-    public static synchronized void registerAnt(int antId){
-        AntLogger.infoLog("Registering new ant: " + antId);
-        PerfMonitor.registerAntIfNew(antId);
-        
-        if (!PerfMonitor.hasBeenSetup){
-            try{
-                hasBeenSetup = true;
-
-                for (long val : totals)
-                    val = 0;
-            }
-            catch(Exception e){
-                AntLogger.infoLog("Error registering Ant " + e);
-            }
-        }
+    public static long startClock(){
+        return System.nanoTime();
     }
     
     /**
-     * Helper method that actually makes the new entry in the hashmap.
-     * @param antId hashcode of the new ant.
+     * Stops a clock tracking a segment of code, and counts the time into the category's histogram.
+     * @param category Category being tracked.
+     * @param start Start time from {@link #startClock()}.
      */
-    private static void registerAntIfNew(int antId){
-        if (antData.containsKey(antId))
-            return;
-        else {
-            long[] antTicks = new long[numCategories];
-            for (long val : antTicks)
-                    val = 0;
-            PerfMonitor.antData.put(antId, antTicks);
-        }
+    public static void stopClock(int category, long start){
+        long nanos = System.nanoTime() - start;
+        if (nanos < 0)
+            nanos = 0;
+        buckets[category][bucket(nanos)].increment();
+        counts[category].increment();
+        totals[category].add(nanos);
+        long max = maxes.get(category);
+        while (nanos > max && !maxes.compareAndSet(category, max, nanos))
+            max = maxes.get(category);
+    }
+    
+    /**
+     * Find the histogram bucket for a time.
+     * <p>
+     * Small times get a bucket each.  Above that, the bucket is picked by the power of two the time falls in, then by the next SUB_BITS bits.
+     * @param nanos Time, in nanoseconds.
+     * @return The bucket index.
+     */
+    private static int bucket(long nanos){
+        if (nanos < SUB_BUCKETS)
+            return (int)nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int)(nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
     }
     
     /**
-     * Increment the global counter after this ant's iteration is complete.
-     * @param elem Category being tracked.
-     * @param changeTicks Number of millis to increase it by.
+     * The largest time that falls into a bucket.
+     * @param bucket The bucket index.
+     * @return Upper bound of the bucket, in nanoseconds.
      */
-    private static void incClock(int elem, long changeTicks){
-        totals[elem] += changeTicks;
+    private static long bucketLimit(int bucket){
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long width = 1L << (exponent - SUB_BITS);
+        return ((SUB_BUCKETS + (bucket % SUB_BUCKETS)) * width) + width - 1;
     }
     
     /**
-     * Starts a counter to track a segment of code for a specific ant.
+     * Estimate a percentile of the times tracked in a category.
      * @param category Category being tracked.
-     * @param antId hashcode of the ant.
-     * @throws PerformanceException 
-     */
-    public static void startClock(int category, int antId) throws PerformanceException {
-        //Object thisAntData = antData.get(antId);
-        try{
-            long[] counter = (long[])antData.get(antId);
-            if (counter==null){
-                AntLogger.infoLog("Ant hasn't registered yet, so register now.");
-                PerfMonitor.registerAntIfNew(antId);
-                counter = (long[])antData.get(antId);
-            }
-            if (counter[category] > 0){
-                throw new PerformanceException("Starting performance clock on object/category that was already started!");
-            }
-            counter[category] = System.currentTimeMillis();
+     * @param fraction The percentile as a fraction, e.g. 0.99.
+     * @return The upper bound of the bucket holding that percentile, in nanoseconds, or 0 if nothing was tracked.
+     */
+    public static long percentile(int category, double fraction){
+        long[] counted = new long[NUM_BUCKETS];
+        long count = 0;
+        for (int bucket = 0; bucket < NUM_BUCKETS; bucket++){
+            counted[bucket] = buckets[category][bucket].sum();
+            count += counted[bucket];
         }
-        catch (Exception e){
-            AntLogger.infoLog("Error finding antData and starting timer. AntId: " + antId + " - Category: " + category + " - error:" + e);
+        if (count == 0)
+            return 0;
+        long rank = (long)Math.ceil(fraction * count);
+        long seen = 0;
+        for (int bucket = 0; bucket < NUM_BUCKETS; bucket++){
+            seen += counted[bucket];
+            if (seen >= rank && counted[bucket] > 0)
+                return Math.min(bucketLimit(bucket), maxes.get(category));
         }
+        return maxes.get(category);
     }
     
     /**
-     * Stops a counter tracking a segment of code for a specific ant.
-     * @param category Category being tracked.
-     * @param antId hashcode of the ant.
+     * Summarize every category that has been tracked: number of samples, total time, and p50 / p99 / max latency.
+     * @return The summary, one line per category.
+     */
+    public static String report(){
+        StringBuilder report = new StringBuilder();
+        for (int category = 0; category < NUM_CATEGORIES; category++){
+            long count = counts[category].sum();
+            if (count == 0)
+                continue;
+            report.append(String.format("%-28s count=%-9d total=%.1fms p50=%.1fus p99=%.1fus max=%.1fus%n",
+                CATEGORY_NAMES[category], count, totals[category].sum() / 1e6,
+                percentile(category, 0.5) / 1e3, percentile(category, 0.99) / 1e3, maxes.get(category) / 1e3));
+        }
+        return report.toString();
+    }
+    
+    /**
+     * Clear every category.
      */
-    public static void stopClock(int category, int antId){
-        long[] counter = (long[])antData.get(antId);
-        long time = System.currentTimeMillis() - counter[category];
-        counter[category] = 0;
-        PerfMonitor.incClock(category, time);
+    public static void reset(){
+        for (int category = 0; category < NUM_CATEGORIES; category++){
+            counts[category].reset();
+            totals[category].reset();
+            maxes.set(category, 0);
+            for (int bucket = 0; bucket < NUM_BUCKETS; bucket++)
+                buckets[category][bucket].reset();
+        }
     }
     
     /**
-     * Make an entry in the log for the current running totals of the different code segments across all ants.
+     * Make an entry in the log for the current latencies of the different code segments across all ants.
      * <p>
      * Only one ant should call this, likely the traffic cop.
      * @param year The current year.
      */
     public static void log(int year){
-        String logString = year + " -- METHOD_ANALYZE_SURROUNDINGS:" + totals[0] + " - METHOD_SEND:" + totals[1] 
-                + " - SEND_BUNDLE:"+ totals[5] + " - METHOD_RECEIVE:" + totals[2] + " - RECEIVE_LEARN:" 
-                + totals[6] + " - METHOD_BUNDLE:" + totals[7] + " - METHOD_SEARCH:" + totals[3] + " - METHOD_DO_WORK:" + totals[4];
-        AntLogger.infoLog(logString);
+        if (AntLogger.isEnabled())
+            AntLogger.infoLog("%d --%n%s", year, report());
     }
 }
 
 /**
  * Static logger class to be used for logging throughout myAnt class.
+ * <p>
+ * Log calls take a format and up to 3 arguments, and check if logging is on before doing anything else,
+ * so a disabled log call costs a single field read: no string is built and no lock is taken.
+ * <p>
+ * When logging is on, formatted lines go on a bounded queue, and a background thread writes them to the log file.
+ * If the writer falls behind and the queue fills up, new lines are dropped and counted rather than slowing the ants down.
  * @author jessesmith
  */
 class AntLogger {
-    private static Logger logger;
     private static FileHandler fh;
-    private static boolean hasBeenSetup = false;
-    private static boolean DEBUG = false;
+    private static volatile boolean hasBeenSetup = false;
+    //Checked before any work on every log call.
+    private static volatile boolean enabled = false;
+    
+    //Lines waiting for the writer thread, and the number dropped because the queue was full.
+    private static final int QUEUE_SIZE = 8192;
+    private static final ArrayBlockingQueue<String> queue = new ArrayBlockingQueue<String>(QUEUE_SIZE);
+    private static final AtomicLong dropped = new AtomicLong();
     
     /**
-     * Initialize logger handlers, do this once.
-     * @param debugFlag 
+     * Initialize logger handlers and the writer thread, do this once.
+     * <p>
+     * Nothing is set up when debugging is off, so no log file is created.
+     * @param debugFlag Should anything be logged.
      */
-    public static synchronized void setup(boolean debugFlag){
-        if (!hasBeenSetup){
+    public static void setup(boolean debugFlag){
+        if (hasBeenSetup)
+            return;
+        synchronized (AntLogger.class){
+            if (hasBeenSetup)
+                return;
+            hasBeenSetup = true;
+            if (!debugFlag)
+                return;
             try{
-                AntLogger.DEBUG = debugFlag;
-                AntLogger.logger = Logger.getLogger("");
+                //The handler isn't attached to a Logger, so the logging system doesn't close it while the shutdown hook is still writing.
                 AntLogger.fh = new FileHandler("./AntsLogFile.log");
-                AntLogger.logger.addHandler(fh);  
-                Handler[] ha = AntLogger.logger.getHandlers();
-                //Remove default console handler
-                AntLogger.logger.removeHandler(ha[0]);
-                //logger.setLevel(Level.ALL);  
                 SimpleFormatter formatter = new SimpleFormatter();  
                 AntLogger.fh.setFormatter(formatter);
-                hasBeenSetup = true;
             }
             catch (Exception e){
-                AntLogger.infoLog("Error Creating Logger");
+                return;
             }
+            Thread writer = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        while (true)
+                            write(queue.take());
+                    }
+                    catch (InterruptedException e) {
+                        //Shutting down.
+                    }
+                }
+            }, "AntLogger");
+            writer.setDaemon(true);
+            writer.start();
+            //Write out whatever is left when the game ends.
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                public void run() {
+                    String line;
+                    while ((line = queue.poll()) != null)
+                        write(line);
+                    AntLogger.fh.flush();
+                }
+            }));
+            enabled = true;
         }
     }
     
+    /**
+     * Is logging on?  Check this before building anything expensive that's only needed for a log line.
+     * @return True if log lines will be written.
+     */
+    public static boolean isEnabled(){
+        return enabled;
+    }
+    
     /**
      * Log to logger at level INFO
      * @param logString String to be logged.
      */
-    public static synchronized void infoLog(String logString){
-        if (AntLogger.hasBeenSetup) {
-            if (DEBUG) AntLogger.logger.info(logString);
-        }
+    public static void infoLog(String logString){
+        if (enabled)
+            enqueue(logString);
+    }
+    
+    /**
+     * Log to logger at level INFO.  The line is only formatted if logging is on.
+     * @param format {@link String#format(String, Object...)} format string.
+     * @param arg Format argument.
+     */
+    public static void infoLog(String format, Object arg){
+        if (enabled)
+            enqueue(String.format(format, arg));
+    }
+    
+    /**
+     * Log to logger at level INFO.  The line is only formatted if logging is on.
+     * @param format {@link String#format(String, Object...)} format string.
+     * @param arg1 First format argument.
+     * @param arg2 Second format argument.
+     */
+    public static void infoLog(String format, Object arg1, Object arg2){
+        if (enabled)
+            enqueue(String.format(format, arg1, arg2));
+    }
+    
+    /**
+     * Log to logger at level INFO.  The line is only formatted if logging is on.
+     * @param format {@link String#format(String, Object...)} format string.
+     * @param arg1 First format argument.
+     * @param arg2 Second format argument.
+     * @param arg3 Third format argument.
+     */
+    public static void infoLog(String format, Object arg1, Object arg2, Object arg3){
+        if (enabled)
+            enqueue(String.format(format, arg1, arg2, arg3));
+    }
+    
+    /**
+     * Hand a line to the writer thread, or drop it if the writer is too far behind.
+     * @param line Line to be logged.
+     */
+    private static void enqueue(String line){
+        if (!queue.offer(line))
+            dropped.incrementAndGet();
+    }
+    
+    /**
+     * Write a line to the log file, noting first if any lines were dropped before it.
+     * Only the writer thread, or the shutdown hook, calls this.
+     * @param line Line to be logged.
+     */
+    private static void write(String line){
+        long lost = dropped.getAndSet(0);
+        if (lost > 0)
+            publish("Log queue full, dropped " + lost + " lines");
+        publish(line);
+    }
+    
+    /**
+     * Write a line to the log file at level INFO.
+     * @param line Line to be logged.
+     */
+    private static void publish(String line){
+        LogRecord record = new LogRecord(Level.INFO, line);
+        record.setLoggerName("MyAnt");
+        AntLogger.fh.publish(record);
     }
 }
 
@@ -1617,14 +4909,3 @@ class NavException extends Exception {
         super(message);
     }
 }
-
-/**
- * Exception used for PerfMonitor methods.
- * @author jessesmith
- */
-class PerformanceException extends Exception {
-    
-    public PerformanceException(String message){
-        super(message);
-    }
-}
\ No newline at end of file
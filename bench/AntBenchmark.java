@@ -0,0 +1,648 @@
+package ants;
+
+import java.awt.Point;
+import java.util.*;
+
+/**
+ * Micro-benchmarks for the hot paths of the ant brain.
+ * <p>
+ * Each benchmark runs on synthetic maps of varying known area and obstacle density, built directly into an {@link AntKnowledge}.
+ * The benchmarks are measured with JMH by {@link AntJmhBenchmark}, which forks a fresh JVM for each one:
+ * <pre>
+ *   gradle jmh [-Pbenchmark=comma separated benchmark names]
+ * </pre>
+ * This class can also run them for a quick look without JMH.  Every benchmark is run for a few warmup iterations before the measured iterations,
+ * each iteration runs the operation repeatedly for a fixed time, and the results of every call are folded into a sink so the JIT can't drop the work.
+ * Numbers are reported as nanoseconds per operation, with the standard deviation across measured iterations.  There's no forking, so
+ * benchmarks run later in the same JVM can be skewed by what the JIT learned from earlier ones.
+ * <pre>
+ *   javac -d out sim/ants/*.java MyAnt.java bench/AntBenchmark.java
+ *   java -cp out ants.AntBenchmark [benchmark name filter]
+ * </pre>
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+public class AntBenchmark {
+
+    //Known area around home, as a distance in each direction, and obstacle densities to run each benchmark with.
+    static final int[] RADII = {12, 24, 35};
+    static final double[] DENSITIES = {0.0, 0.15, 0.3};
+
+    //Iteration settings
+    static final int WARMUP_ITERATIONS = 3, MEASURE_ITERATIONS = 5;
+    static final long WARMUP_NANOS = 100000000L, MEASURE_NANOS = 200000000L;
+
+    //Results of every call end up here, so the work can't be optimized away.
+    static long sink = 0;
+
+    /**
+     * A single benchmark: set up on a map, then run one operation at a time.
+     */
+    static abstract class Benchmark {
+        final String name;
+
+        Benchmark(String p_name) {
+            name = p_name;
+        }
+
+        /**
+         * Build the state for one map.
+         * @param map The synthetic map.
+         */
+        abstract void setup(SyntheticMap map);
+
+        /**
+         * Run the operation once.
+         * @return Any value derived from the result.
+         */
+        abstract int run();
+    }
+
+    /**
+     * A synthetic map: the true layout of a square area around home, and a brain that knows all of it.
+     * <p>
+     * The layout is indexed by its own spot numbers, covering the area plus a blocked ring around it.
+     * Brains address the same locations, relative to home, by their own cells.
+     */
+    static class SyntheticMap {
+        final int radius;
+        final double density;
+        final Random random;
+        //A brain whose knowledge holds the whole area.
+        final AntBrain brain;
+        //Width of the layout, including the blocked ring.
+        final int side;
+        //The true layout, per spot.
+        final boolean[] open;
+        final int[] food;
+        //Spots reachable from home.
+        final int[] reachable;
+
+        SyntheticMap(int p_radius, double p_density, long seed) {
+            radius = p_radius;
+            density = p_density;
+            random = new Random(seed);
+            side = 2 * radius + 3;
+            open = new boolean[side * side];
+            food = new int[side * side];
+            for (int x = -radius; x <= radius; x++) {
+                for (int y = -radius; y <= radius; y++) {
+                    int spot = spot(x, y);
+                    boolean nearHome = Math.abs(x) <= 1 && Math.abs(y) <= 1;
+                    open[spot] = nearHome || random.nextDouble() >= density;
+                    if (open[spot] && !nearHome && random.nextDouble() < 0.03)
+                        food[spot] = 1 + random.nextInt(10);
+                }
+            }
+            reachable = reachableFrom(spot(0, 0));
+            brain = new AntBrain();
+            teach(brain, 1);
+        }
+
+        /**
+         * Teach a brain the whole area, as if it had visited every reachable spot and viewed its neighbors.
+         * @param target Brain to teach.
+         * @param year Year the knowledge was learned.
+         */
+        void teach(AntBrain target, int year) {
+            for (int spot : reachable) {
+                int cell = cellIn(target, spot);
+                target.knowledge.setFood(cell, food[spot], year);
+                target.knowledge.setTraversable(cell, true, year);
+                for (int n : neighbors(spot))
+                    target.knowledge.setTraversable(cellIn(target, n), open[n], year);
+            }
+        }
+
+        /**
+         * Breadth first search over the true layout.
+         * @param start Spot to start from.
+         * @return Every open spot reachable from the start.
+         */
+        int[] reachableFrom(int start) {
+            boolean[] seen = new boolean[open.length];
+            int[] queue = new int[open.length];
+            int head = 0, tail = 0;
+            queue[tail++] = start;
+            seen[start] = true;
+            while (head < tail) {
+                for (int n : neighbors(queue[head++])) {
+                    if (open[n] && !seen[n]) {
+                        seen[n] = true;
+                        queue[tail++] = n;
+                    }
+                }
+            }
+            return Arrays.copyOf(queue, tail);
+        }
+
+        /**
+         * The neighbors of a spot inside the layout.
+         * @param spot The spot.
+         * @return The neighboring spots.
+         */
+        int[] neighbors(int spot) {
+            int x = spot / side, y = spot % side;
+            int[] n = new int[4];
+            int count = 0;
+            if (x + 1 < side) n[count++] = spot + side;
+            if (x > 0) n[count++] = spot - side;
+            if (y + 1 < side) n[count++] = spot + 1;
+            if (y > 0) n[count++] = spot - 1;
+            return Arrays.copyOf(n, count);
+        }
+
+        /**
+         * The spot at a location relative to home.
+         */
+        int spot(int x, int y) {
+            return (x + radius + 1) * side + (y + radius + 1);
+        }
+
+        /**
+         * The location of a spot relative to home.
+         */
+        Point toPoint(int spot) {
+            return new Point(spot / side - radius - 1, spot % side - radius - 1);
+        }
+
+        /**
+         * A brain's cell for a spot, growing its map if needed.
+         */
+        int cellIn(AntBrain target, int spot) {
+            Point p = toPoint(spot);
+            target.knowledge.growToFit(p.x, p.y);
+            return target.knowledge.cell(p.x, p.y);
+        }
+    }
+
+    /**
+     * A* between random pairs of reachable cells.
+     */
+    static class FindRoute extends Benchmark {
+        AntBrain brain;
+        Point[] from, to;
+        int next = 0;
+
+        FindRoute() {
+            this("findRoute");
+        }
+
+        FindRoute(String p_name) {
+            super(p_name);
+        }
+
+        void setup(SyntheticMap map) {
+            brain = map.brain;
+            from = new Point[256];
+            to = new Point[256];
+            for (int i = 0; i < from.length; i++) {
+                from[i] = map.toPoint(map.reachable[map.random.nextInt(map.reachable.length)]);
+                to[i] = map.toPoint(map.reachable[map.random.nextInt(map.reachable.length)]);
+            }
+        }
+
+        int run() {
+            int i = next++ & 255;
+            brain.currentPoint.setLocation(from[i]);
+            return brain.findRoute(to[i]) ? 1 : 0;
+        }
+    }
+
+    /**
+     * {@link FindRoute} with Jump Point Search in place of A*.
+     */
+    static class FindRouteJumpPoint extends FindRoute {
+        FindRouteJumpPoint() {
+            super("findRoute.jumpPoint");
+        }
+
+        void setup(SyntheticMap map) {
+            super.setup(map);
+            brain.routePlanner = AntBrain.PLANNER_JUMP_POINT;
+        }
+    }
+
+    /**
+     * {@link FindRoute} with hierarchical A* over the chunks in place of A*.
+     */
+    static class FindRouteHierarchical extends FindRoute {
+        FindRouteHierarchical() {
+            super("findRoute.hierarchical");
+        }
+
+        void setup(SyntheticMap map) {
+            super.setup(map);
+            brain.routePlanner = AntBrain.PLANNER_HIERARCHICAL;
+        }
+    }
+
+    /**
+     * {@link FindRoute} with A* guided by the landmark distances.  The tables are built by the first search and then kept, as the map doesn't change.
+     */
+    static class FindRouteLandmarks extends FindRoute {
+        FindRouteLandmarks() {
+            super("findRoute.landmarks");
+        }
+
+        void setup(SyntheticMap map) {
+            super.setup(map);
+            brain.routePlanner = AntBrain.PLANNER_LANDMARKS;
+        }
+    }
+
+    /**
+     * {@link FindRoute} searching from both ends at once.
+     */
+    static class FindRouteBidirectional extends FindRoute {
+        FindRouteBidirectional() {
+            super("findRoute.bidirectional");
+        }
+
+        void setup(SyntheticMap map) {
+            super.setup(map);
+            brain.routePlanner = AntBrain.PLANNER_BIDIRECTIONAL;
+        }
+    }
+
+    /**
+     * The same few trips over and over, as a worker going back to the same food makes them, so every route comes from the route cache.
+     */
+    static class FindRouteRepeated extends FindRoute {
+        FindRouteRepeated() {
+            super("findRoute.repeated");
+        }
+
+        int run() {
+            int i = next++ & 7;
+            brain.currentPoint.setLocation(from[i]);
+            return brain.findRoute(to[i]) ? 1 : 0;
+        }
+    }
+
+    /**
+     * Merge a friend's whole-map message into a brain that knows nothing yet.
+     */
+    static class LearnIntoEmpty extends Benchmark {
+        AntMessage message;
+
+        LearnIntoEmpty() {
+            super("learn.wholeMap.intoEmpty");
+        }
+
+        void setup(SyntheticMap map) {
+            message = wholeMapMessage(map);
+        }
+
+        int run() {
+            AntBrain brain = new AntBrain();
+            brain.learn(message);
+            return brain.knowledge.version;
+        }
+    }
+
+    /**
+     * Merge a friend's whole-map message into a brain that already knows all of it.
+     */
+    static class LearnAlreadyKnown extends Benchmark {
+        AntMessage message;
+        AntBrain brain;
+
+        LearnAlreadyKnown() {
+            super("learn.wholeMap.alreadyKnown");
+        }
+
+        void setup(SyntheticMap map) {
+            message = wholeMapMessage(map);
+            brain = new AntBrain();
+            map.teach(brain, 1);
+        }
+
+        int run() {
+            brain.learn(message);
+            return brain.knowledge.version;
+        }
+    }
+
+    /**
+     * What send() and receive() do with the whole map: build the message, encode it, decode it, and learn from it.
+     */
+    static class RoundTripWholeMap extends Benchmark {
+        AntBrain sender, receiver;
+        MessageCodec sendCodec = new MessageCodec(), receiveCodec = new MessageCodec();
+
+        RoundTripWholeMap() {
+            super("message.roundTrip.wholeMap");
+        }
+
+        void setup(SyntheticMap map) {
+            sender = map.brain;
+            receiver = new AntBrain();
+            map.teach(receiver, 1);
+        }
+
+        int run() {
+            byte[] data = sendCodec.encode(buildMessage(sender, true));
+            return roundTrip(data, receiveCodec, receiver);
+        }
+    }
+
+    /**
+     * A resync after the receiver missed one delta: the receiver asks with a digest of its map, and the sender answers with
+     * only the chunks that differ.  The operation is the sender building and encoding the answer, and the receiver learning it.
+     */
+    static class RoundTripDigestResync extends Benchmark {
+        AntBrain sender, receiver;
+        SyntheticMap map;
+        MessageCodec sendCodec = new MessageCodec(), receiveCodec = new MessageCodec();
+        int year = 2;
+
+        RoundTripDigestResync() {
+            super("message.roundTrip.digestResync");
+        }
+
+        void setup(SyntheticMap p_map) {
+            map = p_map;
+            sender = new AntBrain();
+            map.teach(sender, 1);
+            receiver = new AntBrain();
+            map.teach(receiver, 1);
+        }
+
+        int run() {
+            //The sender changes a few nearby spots, and the message carrying them is lost.
+            year++;
+            int start = map.random.nextInt(map.reachable.length - 20);
+            for (int i = 0; i < 20; i++)
+                sender.knowledge.setTraversable(map.cellIn(sender, map.reachable[start + i]), true, year);
+            buildMessage(sender, false);
+            AntMessage request = new AntMessage(receiver.knowledge);
+            request.resync = new int[] {sender.knowledge.id};
+            request.digest = receiver.knowledge.digest();
+            sender.checkResyncRequest(request);
+            byte[] data = sendCodec.encode(sender.buildMessage(true));
+            return roundTrip(data, receiveCodec, receiver);
+        }
+    }
+
+    /**
+     * What send() and receive() do between turns: a message with the handful of spots the sender changed since it last talked.
+     */
+    static class RoundTripDelta extends Benchmark {
+        AntBrain sender, receiver;
+        SyntheticMap map;
+        MessageCodec sendCodec = new MessageCodec(), receiveCodec = new MessageCodec();
+        int year = 2;
+
+        RoundTripDelta() {
+            super("message.roundTrip.delta");
+        }
+
+        void setup(SyntheticMap p_map) {
+            map = p_map;
+            sender = new AntBrain();
+            map.teach(sender, 1);
+            receiver = new AntBrain();
+            map.teach(receiver, 1);
+            roundTrip(sendCodec.encode(buildMessage(sender, true)), receiveCodec, receiver);
+        }
+
+        int run() {
+            //A scanner walking past 5 spots changes about 20 of them.
+            year++;
+            for (int i = 0; i < 20; i++)
+                sender.knowledge.setTraversable(map.cellIn(sender, map.reachable[map.random.nextInt(map.reachable.length)]), true, year);
+            byte[] data = sendCodec.encode(buildMessage(sender, false));
+            return roundTrip(data, receiveCodec, receiver);
+        }
+    }
+
+    /**
+     * Closest known food to a random reachable cell.
+     */
+    static class CellsWithFood extends Benchmark {
+        AntBrain brain;
+        Point[] from;
+        int next = 0;
+
+        CellsWithFood() {
+            this("getCellsWithFood");
+        }
+
+        CellsWithFood(String p_name) {
+            super(p_name);
+        }
+
+        void setup(SyntheticMap map) {
+            brain = map.brain;
+            from = new Point[256];
+            for (int i = 0; i < from.length; i++)
+                from[i] = map.toPoint(map.reachable[map.random.nextInt(map.reachable.length)]);
+        }
+
+        int run() {
+            brain.currentPoint.setLocation(from[next++ & 255]);
+            return brain.getCellsWithFood(1);
+        }
+    }
+
+    /**
+     * Pick the closest food from random reachable cells and route to it, as a worker does when it needs more food.
+     */
+    static class FindNextFood extends CellsWithFood {
+        FindNextFood() {
+            super("findNextFood");
+        }
+
+        int run() {
+            brain.currentPoint.setLocation(from[next++ & 255]);
+            brain.findNextFood();
+            return brain.getCurrentCell();
+        }
+    }
+
+    /**
+     * The Traffic Cop meeting a worker at home that needs food, and sending it for the nearest food nobody else was sent for.
+     * Every 256 workers the dispatcher starts over, so the reservations don't use up the food, and building its queue is counted once per 256.
+     */
+    static class DispatchFood extends Benchmark {
+        AntKnowledge knowledge;
+        FoodDispatcher dispatcher;
+        AntMessage message = new AntMessage();
+        int next = 0;
+
+        DispatchFood() {
+            super("dispatchFood");
+        }
+
+        void setup(SyntheticMap map) {
+            knowledge = map.brain.knowledge;
+            message.role = AntBrain.WORKER;
+        }
+
+        int run() {
+            if ((next & 255) == 0)
+                dispatcher = new FoodDispatcher();
+            message.id = next++ & 255;
+            dispatcher.hear(knowledge, message);
+            return dispatcher.size();
+        }
+    }
+
+    /**
+     * One scanner turn: pick the next unexplored spot with localExplore, step towards it, and look around.
+     * The scanner starts knowing nothing but home, growing its map as it goes, and starts over once it has explored the whole area.
+     */
+    static class LocalExplore extends Benchmark {
+        SyntheticMap map;
+        AntBrain scanner;
+        int year;
+
+        LocalExplore() {
+            super("localExplore");
+        }
+
+        void setup(SyntheticMap p_map) {
+            map = p_map;
+            newScanner();
+        }
+
+        void newScanner() {
+            scanner = new AntBrain(AntKnowledge.INITIAL_SPAN, AntKnowledge.MAX_SPAN, map.radius);
+            scanner.setAsScanner();
+            //Out of earshot of the other ants, so it keeps exploring rather than heading back to report.
+            scanner.incLastTalkedToNonScanner();
+            scanner.incLastTalkedToNonScanner();
+            year = 1;
+            look();
+        }
+
+        int run() {
+            if (scanner.knowledge.role != AntBrain.SCANNER)
+                newScanner();
+            scanner.knowledge.year = ++year;
+            scanner.search();
+            look();
+            return scanner.getCurrentCell();
+        }
+
+        /**
+         * What analyzeSurroundings does, using the true layout of the map.
+         */
+        void look() {
+            int here = map.spot(scanner.currentPoint.x, scanner.currentPoint.y);
+            scanner.knowledge.setFood(map.cellIn(scanner, here), map.food[here], year);
+            for (int n : map.neighbors(here))
+                scanner.knowledge.setTraversable(map.cellIn(scanner, n), map.open[n], year);
+        }
+    }
+
+    /**
+     * A message with every spot the map brain knows.
+     */
+    static AntMessage wholeMapMessage(SyntheticMap map) {
+        return buildMessage(map.brain, true);
+    }
+
+    /**
+     * Build a message with grid spots, the same way send() does.
+     * @param brain Brain sending the message.
+     * @param wholeMap Send every known spot, as if a friend had asked for a resync, rather than only the changed ones.
+     */
+    static AntMessage buildMessage(AntBrain brain, boolean wholeMap) {
+        if (wholeMap) {
+            AntMessage request = new AntMessage();
+            request.resync = new int[] {brain.knowledge.id};
+            brain.checkResyncRequest(request);
+        }
+        return brain.buildMessage(true);
+    }
+
+    /**
+     * The receiving half of a message exchange: decode and learn.
+     */
+    static int roundTrip(byte[] data, MessageCodec codec, AntBrain receiver) {
+        try {
+            AntMessage message = codec.decode(data);
+            receiver.checkResyncRequest(message);
+            receiver.learn(message);
+            return data.length;
+        }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Run one benchmark on one map and print the result.
+     */
+    static void measure(Benchmark benchmark, SyntheticMap map) {
+        benchmark.setup(map);
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+            iteration(benchmark, WARMUP_NANOS);
+        double[] results = new double[MEASURE_ITERATIONS];
+        double mean = 0;
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            results[i] = iteration(benchmark, MEASURE_NANOS);
+            mean += results[i] / MEASURE_ITERATIONS;
+        }
+        double variance = 0;
+        for (double r : results)
+            variance += (r - mean) * (r - mean) / MEASURE_ITERATIONS;
+        System.out.printf("%-32s radius=%-3d density=%.2f %14.1f ns/op  +- %.1f%n",
+                benchmark.name, map.radius, map.density, mean, Math.sqrt(variance));
+    }
+
+    /**
+     * Run the operation repeatedly for a while.
+     * @return Nanoseconds per operation.
+     */
+    static double iteration(Benchmark benchmark, long nanos) {
+        long ops = 0;
+        long start = System.nanoTime(), end = start + nanos, now;
+        do {
+            for (int i = 0; i < 64; i++)
+                sink += benchmark.run();
+            ops += 64;
+            now = System.nanoTime();
+        } while (now < end);
+        return (double)(now - start) / ops;
+    }
+
+    /**
+     * A new instance of every benchmark.
+     * @return The benchmarks, not yet set up.
+     */
+    static Benchmark[] all() {
+        return new Benchmark[] {new FindRoute(), new FindRouteJumpPoint(), new FindRouteHierarchical(), new FindRouteLandmarks(), new FindRouteBidirectional(), new FindRouteRepeated(), new LearnIntoEmpty(), new LearnAlreadyKnown(),
+            new RoundTripWholeMap(), new RoundTripDelta(), new RoundTripDigestResync(), new CellsWithFood(), new FindNextFood(), new DispatchFood(), new LocalExplore()};
+    }
+
+    /**
+     * A new instance of the benchmark with the given name.
+     * @param name Name of the benchmark.
+     * @return The benchmark, not yet set up.
+     * @throws IllegalArgumentException If there is no benchmark with that name.
+     */
+    static Benchmark named(String name) {
+        for (Benchmark benchmark : all())
+            if (benchmark.name.equals(name))
+                return benchmark;
+        throw new IllegalArgumentException("No benchmark named " + name);
+    }
+
+    /**
+     * Run every benchmark whose name contains the filter, on every map.
+     * @param args Optional benchmark name filter.
+     */
+    public static void main(String[] args) {
+        String filter = args.length > 0 ? args[0] : "";
+        for (int radius : RADII) {
+            for (double density : DENSITIES) {
+                for (Benchmark benchmark : all())
+                    if (benchmark.name.contains(filter))
+                        measure(benchmark, new SyntheticMap(radius, density, 42L));
+            }
+        }
+        System.out.println("sink: " + sink);
+    }
+}
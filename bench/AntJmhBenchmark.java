@@ -0,0 +1,60 @@
+package ants;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JMH benchmarks for the hot paths of the ant brain.
+ * <p>
+ * Each {@link AntBenchmark.Benchmark} is run on each synthetic map, by name, radius and obstacle density.
+ * JMH forks a fresh JVM for each combination, and takes the value returned by each call, so the work can't be dropped or folded away.
+ * Run them all, or only some, by name, radius and obstacle density:
+ * <pre>
+ *   gradle jmh
+ *   gradle jmh -Pbenchmark=findRoute,dispatchFood -Pradius=35 -Pdensity=0.15
+ * </pre>
+ *
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AntJmhBenchmark {
+
+    @Param({"findRoute", "findRoute.jumpPoint", "findRoute.hierarchical", "findRoute.landmarks", "findRoute.bidirectional", "findRoute.repeated",
+        "learn.wholeMap.intoEmpty", "learn.wholeMap.alreadyKnown", "message.roundTrip.wholeMap", "message.roundTrip.delta", "message.roundTrip.digestResync",
+        "getCellsWithFood", "findNextFood", "dispatchFood", "localExplore"})
+    String benchmark;
+
+    //Known area around home, as a distance in each direction.  Same as AntBenchmark.RADII.
+    @Param({"12", "24", "35"})
+    int radius;
+
+    //Fraction of cells that are obstacles.  Same as AntBenchmark.DENSITIES.
+    @Param({"0.0", "0.15", "0.3"})
+    double density;
+
+    //The benchmark, set up on its map.
+    private AntBenchmark.Benchmark target;
+
+    /**
+     * Build the map and set up the benchmark on it, once per fork.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        target = AntBenchmark.named(benchmark);
+        target.setup(new AntBenchmark.SyntheticMap(radius, density, 42L));
+    }
+
+    /**
+     * Run the operation once.
+     * @return The benchmark's result, consumed by JMH.
+     */
+    @Benchmark
+    public int run() {
+        return target.run();
+    }
+}
@@ -0,0 +1,30 @@
+package ants;
+
+/**
+ * Local stand-in for the engine's ant actions, used by {@link ColonySimulator}.
+ * <p>
+ * Move actions are created once per {@link Direction} and reused.
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+public final class Action {
+    public static final Action HALT = new Action(null), GATHER = new Action(null), DROP_OFF = new Action(null);
+    private static final Action[] MOVES = new Action[Direction.values().length];
+    static {
+        for (Direction d : Direction.values())
+            MOVES[d.ordinal()] = new Action(d);
+    }
+
+    private final Direction direction;
+
+    private Action(Direction direction) {
+        this.direction = direction;
+    }
+
+    public static Action move(Direction direction) {
+        return MOVES[direction.ordinal()];
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+}
@@ -0,0 +1,11 @@
+package ants;
+
+/**
+ * Local stand-in for the engine's ant contract, used by {@link ColonySimulator}.
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+public interface Ant {
+    Action getAction(Surroundings surroundings);
+    byte[] send();
+    void receive(byte[] data);
+}
@@ -0,0 +1,249 @@
+package ants;
+
+import java.util.*;
+
+/**
+ * Headless colony simulator used to load-test {@link MyAnt} without the game engine.
+ * <p>
+ * The simulator generates a walled map with random obstacles and food piles, places every ant on the nest,
+ * and then steps the colony one turn at a time: each ant is asked for its {@link Action}, the action is applied,
+ * and finally every ant sharing a tile with another ant sends its message to the others on that tile.
+ * At the end it prints colony throughput, followed by the latencies tracked by {@link PerfMonitor}.
+ * <p>
+ * Usage: java ants.ColonySimulator [ants] [turns] [mapSize] [obstacleDensity] [foodPiles] [seed]
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+public class ColonySimulator {
+
+    //The world, indexed [x][y].  NORTH is y + 1, EAST is x + 1.
+    private final int width, height;
+    private final boolean[][] blocked;
+    private final int[][] food;
+    private final int[][] numAnts;
+    private final int nestX, nestY;
+
+    //The colony
+    private final Ant[] ants;
+    private final int[] antX, antY;
+    private final boolean[] carrying;
+
+    //Counters
+    private long foodDelivered = 0, messages = 0, messageBytes = 0;
+    private int initialFood = 0;
+
+    //Reused views handed to the ants
+    private final SimTile[] tiles = new SimTile[Direction.values().length];
+    private final SimTile hereTile = new SimTile();
+    private final SimSurroundings surroundings = new SimSurroundings();
+
+    /**
+     * Build a square map with a wall around the edge, random obstacles, and food piles.
+     * @param numberOfAnts Size of the colony.
+     * @param mapSize Width and height of the map, including the outer wall.
+     * @param obstacleDensity Fraction of open tiles turned into obstacles.
+     * @param foodPiles Number of food piles scattered over the map.
+     * @param seed Random seed, so runs are repeatable.
+     */
+    public ColonySimulator(int numberOfAnts, int mapSize, double obstacleDensity, int foodPiles, long seed) {
+        Random random = new Random(seed);
+        width = mapSize;
+        height = mapSize;
+        nestX = width / 2;
+        nestY = height / 2;
+        blocked = new boolean[width][height];
+        food = new int[width][height];
+        numAnts = new int[width][height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                boolean edge = x == 0 || y == 0 || x == width - 1 || y == height - 1;
+                boolean nearNest = Math.abs(x - nestX) <= 1 && Math.abs(y - nestY) <= 1;
+                blocked[x][y] = edge || (!nearNest && random.nextDouble() < obstacleDensity);
+            }
+        }
+        for (int i = 0; i < foodPiles; i++) {
+            int x = 1 + random.nextInt(width - 2);
+            int y = 1 + random.nextInt(height - 2);
+            if (blocked[x][y] || (x == nestX && y == nestY))
+                continue;
+            int amount = 1 + random.nextInt(20);
+            food[x][y] += amount;
+            initialFood += amount;
+        }
+
+        ants = new Ant[numberOfAnts];
+        antX = new int[numberOfAnts];
+        antY = new int[numberOfAnts];
+        carrying = new boolean[numberOfAnts];
+        for (int i = 0; i < numberOfAnts; i++) {
+            ants[i] = new MyAnt();
+            antX[i] = nestX;
+            antY[i] = nestY;
+        }
+        numAnts[nestX][nestY] = numberOfAnts;
+        for (int i = 0; i < tiles.length; i++)
+            tiles[i] = new SimTile();
+    }
+
+    /**
+     * Food the colony has brought home so far.
+     * @return Units of food delivered.
+     */
+    public long getFoodDelivered() {
+        return foodDelivered;
+    }
+
+    /**
+     * Run one turn: every ant acts, then ants sharing a tile talk to each other.
+     */
+    public void step() {
+        for (int i = 0; i < ants.length; i++) {
+            Action action = ants[i].getAction(look(antX[i], antY[i]));
+            apply(i, action);
+        }
+        exchangeMessages();
+    }
+
+    /**
+     * Fill in the reused {@link Surroundings} for the tile at (x, y).
+     */
+    private Surroundings look(int x, int y) {
+        hereTile.set(food[x][y], numAnts[x][y], !blocked[x][y]);
+        for (Direction d : Direction.values()) {
+            int nx = x + dx(d), ny = y + dy(d);
+            tiles[d.ordinal()].set(food[nx][ny], numAnts[nx][ny], !blocked[nx][ny]);
+        }
+        return surroundings;
+    }
+
+    /**
+     * Apply an ant's action to the world.
+     */
+    private void apply(int i, Action action) {
+        int x = antX[i], y = antY[i];
+        if (action == null || action == Action.HALT)
+            return;
+        if (action == Action.GATHER) {
+            if (!carrying[i] && food[x][y] > 0 && !(x == nestX && y == nestY)) {
+                food[x][y]--;
+                carrying[i] = true;
+            }
+            return;
+        }
+        if (action == Action.DROP_OFF) {
+            if (carrying[i] && x == nestX && y == nestY) {
+                carrying[i] = false;
+                foodDelivered++;
+            }
+            return;
+        }
+        Direction d = action.getDirection();
+        int nx = x + dx(d), ny = y + dy(d);
+        if (blocked[nx][ny])
+            return;
+        numAnts[x][y]--;
+        numAnts[nx][ny]++;
+        antX[i] = nx;
+        antY[i] = ny;
+    }
+
+    /**
+     * Deliver messages between every pair of ants standing on the same tile.
+     */
+    private void exchangeMessages() {
+        HashMap<Integer, ArrayList<Integer>> byTile = new HashMap<Integer, ArrayList<Integer>>();
+        for (int i = 0; i < ants.length; i++) {
+            if (numAnts[antX[i]][antY[i]] < 2)
+                continue;
+            int key = antX[i] * height + antY[i];
+            ArrayList<Integer> group = byTile.get(key);
+            if (group == null) {
+                group = new ArrayList<Integer>();
+                byTile.put(key, group);
+            }
+            group.add(i);
+        }
+        for (ArrayList<Integer> group : byTile.values()) {
+            byte[][] sent = new byte[group.size()][];
+            for (int s = 0; s < group.size(); s++) {
+                sent[s] = ants[group.get(s)].send();
+                if (sent[s] != null) {
+                    messages++;
+                    messageBytes += sent[s].length;
+                }
+            }
+            for (int r = 0; r < group.size(); r++)
+                for (int s = 0; s < group.size(); s++)
+                    if (r != s)
+                        ants[group.get(r)].receive(sent[s]);
+        }
+    }
+
+    private static int dx(Direction d) {
+        switch (d) {
+            case EAST: return 1;
+            case WEST: return -1;
+            default: return 0;
+        }
+    }
+
+    private static int dy(Direction d) {
+        switch (d) {
+            case NORTH: return 1;
+            case SOUTH: return -1;
+            default: return 0;
+        }
+    }
+
+    /**
+     * Run the simulator from the command line and print throughput numbers.
+     * @param args [ants] [turns] [mapSize] [obstacleDensity] [foodPiles] [seed]
+     */
+    public static void main(String[] args) {
+        int numberOfAnts = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int turns = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int mapSize = args.length > 2 ? Integer.parseInt(args[2]) : 40;
+        double density = args.length > 3 ? Double.parseDouble(args[3]) : 0.15;
+        int foodPiles = args.length > 4 ? Integer.parseInt(args[4]) : 40;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 42L;
+
+        ColonySimulator sim = new ColonySimulator(numberOfAnts, mapSize, density, foodPiles, seed);
+        long start = System.nanoTime();
+        for (int t = 0; t < turns; t++)
+            sim.step();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("ants=%d turns=%d map=%dx%d density=%.2f food=%d seed=%d%n",
+                numberOfAnts, turns, mapSize, mapSize, density, sim.initialFood, seed);
+        System.out.printf("elapsed=%.3fs turns/sec=%.1f%n", seconds, turns / seconds);
+        System.out.printf("food delivered=%d (%.4f per turn)%n", sim.foodDelivered, (double)sim.foodDelivered / turns);
+        System.out.printf("messages=%d bytes=%d (%.1f bytes/message)%n", sim.messages, sim.messageBytes,
+                sim.messages == 0 ? 0.0 : (double)sim.messageBytes / sim.messages);
+        System.out.print(PerfMonitor.report());
+    }
+
+    /**
+     * Mutable {@link Tile} view reused across turns.
+     */
+    private static class SimTile implements Tile {
+        private int amountOfFood, ants;
+        private boolean travelable;
+
+        void set(int p_food, int p_ants, boolean p_travelable) {
+            amountOfFood = p_food;
+            ants = p_ants;
+            travelable = p_travelable;
+        }
+
+        public int getAmountOfFood() { return amountOfFood; }
+        public int getNumAnts() { return ants; }
+        public boolean isTravelable() { return travelable; }
+    }
+
+    /**
+     * Mutable {@link Surroundings} view reused across turns.
+     */
+    private class SimSurroundings implements Surroundings {
+        public Tile getCurrentTile() { return hereTile; }
+        public Tile getTile(Direction direction) { return tiles[direction.ordinal()]; }
+    }
+}
@@ -0,0 +1,10 @@
+package ants;
+
+/**
+ * Local stand-in for the engine's compass directions, used by {@link ColonySimulator}.
+ * NORTH increases y, EAST increases x.
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+public enum Direction {
+    NORTH, EAST, SOUTH, WEST;
+}
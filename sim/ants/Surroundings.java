@@ -0,0 +1,10 @@
+package ants;
+
+/**
+ * Local stand-in for the engine's view of an ant's tile and its four neighbors, used by {@link ColonySimulator}.
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+public interface Surroundings {
+    Tile getCurrentTile();
+    Tile getTile(Direction direction);
+}
@@ -0,0 +1,11 @@
+package ants;
+
+/**
+ * Local stand-in for the engine's view of a single map tile, used by {@link ColonySimulator}.
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+public interface Tile {
+    int getAmountOfFood();
+    int getNumAnts();
+    boolean isTravelable();
+}
@@ -0,0 +1,89 @@
+package ants;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import org.junit.Test;
+
+/**
+ * Regression tests for the ways a Scanner's exploration used to hang.
+ *
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+public class AntBrainExploreTest {
+
+    //Long enough for either test to finish many times over, short enough to fail rather than hang the build.
+    private static final long TIMEOUT = 5000;
+
+    /**
+     * A Scanner walled in at home finishes its map without a route anywhere, becomes a worker, and search() goes on to doWork()
+     * rather than calling localExplore forever.
+     */
+    @Test(timeout = TIMEOUT)
+    public void searchStopsWhenScannerFinishesWithoutRoute() {
+        AntBrain brain = new AntBrain(AntKnowledge.INITIAL_SPAN, AntKnowledge.MAX_SPAN, 4);
+        brain.setAsScanner();
+        AntKnowledge knowledge = brain.knowledge;
+        knowledge.year = 1;
+        knowledge.setTraversable(knowledge.cell(0, 0), true, 1);
+        knowledge.setFood(knowledge.cell(0, 0), 0, 1);
+        for (int d = 0; d < AntBrain.STEP_X.length; d++)
+            knowledge.setTraversable(knowledge.cell(AntBrain.STEP_X[d], AntBrain.STEP_Y[d]), false, 1);
+
+        assertEquals(Action.HALT, brain.search());
+        assertEquals(AntBrain.WORKER, knowledge.role);
+    }
+
+    /**
+     * When widening the threshold finds nothing new to explore, localExplore widens again, rather than routing to the cell it picked last time.
+     * <p>
+     * That cell number was picked before the map grew, so it now names a different spot, far outside the threshold.
+     */
+    @Test(timeout = TIMEOUT)
+    public void localExploreIgnoresCellPickedBeforeTheMapGrew() {
+        int maxThreshold = 6;
+        AntBrain brain = new AntBrain(AntKnowledge.INITIAL_SPAN, AntKnowledge.MAX_SPAN, maxThreshold);
+        brain.setAsScanner();
+        AntKnowledge knowledge = brain.knowledge;
+        knowledge.year = 1;
+        int half = AntKnowledge.INITIAL_SPAN / 2;
+        Point next = new Point(1, 0);
+
+        //Everything I can see is explored, except for the spot next door.
+        explore(knowledge, half, next);
+        int picked = knowledge.cell(next.x, next.y);
+        brain.localExplore();
+        assertEquals(1, brain.currentRoute.size());
+
+        //Walk over, and learn a bigger map, where the old cell number is a spot nobody has visited yet.
+        brain.currentRoute.clear();
+        brain.currentPoint = next;
+        knowledge.setFood(picked, 0, 1);
+        knowledge.growToFit(-2 * half, -2 * half);
+        Point renumbered = new Point(knowledge.xOf(picked), knowledge.yOf(picked));
+        assertTrue(Math.max(Math.abs(renumbered.x), Math.abs(renumbered.y)) > maxThreshold + 2);
+        explore(knowledge, 2 * half, renumbered);
+
+        //The sector is finished, so the only route is the single step home to report.
+        brain.localExplore();
+        assertEquals(1, brain.currentRoute.size());
+        assertEquals(AntBrain.SCANNER, knowledge.role);
+    }
+
+    /**
+     * Mark every spot of a square around home as visited and empty, except for one that is only viewed.
+     * @param p_knowledge The map to fill.
+     * @param p_half Half the width of the square.
+     * @param p_unvisited The spot to leave unvisited.
+     */
+    private static void explore(AntKnowledge p_knowledge, int p_half, Point p_unvisited) {
+        for (int x = -p_half; x < p_half; x++) {
+            for (int y = -p_half; y < p_half; y++) {
+                int cell = p_knowledge.cell(x, y);
+                p_knowledge.setTraversable(cell, true, 1);
+                if (x != p_unvisited.x || y != p_unvisited.y)
+                    p_knowledge.setFood(cell, 0, 1);
+            }
+        }
+    }
+}
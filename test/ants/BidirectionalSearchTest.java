@@ -0,0 +1,92 @@
+package ants;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import org.junit.Test;
+
+/**
+ * Tests that {@link RouteSearch#searchBidirectional} finds the same routes as plain A*, on seeded synthetic maps and where the two halves meet at once.
+ *
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+public class BidirectionalSearchTest {
+
+    /**
+     * Routes between random spots of the seeded synthetic maps are found exactly when A* finds one, and are just as short.
+     */
+    @Test
+    public void matchesAStarOnSyntheticMaps() {
+        RouteChecks.compareWithAStar(AntBrain.PLANNER_BIDIRECTIONAL, true);
+    }
+
+    /**
+     * Start and target the same spot.
+     */
+    @Test
+    public void startIsTarget() {
+        check(0, new Point(1, 1),
+            "...",
+            "...",
+            "...");
+    }
+
+    /**
+     * The target one step away, each way.
+     */
+    @Test
+    public void targetNextToStart() {
+        String[] rows = {
+            ".T.",
+            "TST",
+            ".T."};
+        Point from = RouteChecks.find('S', rows);
+        for (int d = 0; d < AntBrain.STEP_X.length; d++) {
+            Point to = new Point(from.x + AntBrain.STEP_X[d], from.y + AntBrain.STEP_Y[d]);
+            assertEquals("A* to " + to, 1, RouteChecks.route(RouteChecks.brain(AntBrain.PLANNER_A_STAR, rows), from, to));
+            assertEquals("Bidirectional to " + to, 1, RouteChecks.route(RouteChecks.brain(AntBrain.PLANNER_BIDIRECTIONAL, rows), from, to));
+        }
+    }
+
+    /**
+     * The target two steps away, where the halves meet on the spot between.
+     */
+    @Test
+    public void targetTwoSteps() {
+        check(2, null, "S.T");
+    }
+
+    /**
+     * A start nobody has mapped yet, as for an ant that has just stepped onto a spot.
+     */
+    @Test
+    public void unmappedStart() {
+        check(3, new Point(0, 0), " ..T");
+    }
+
+    /**
+     * A target known to be blocked, or walled off, has no route.
+     */
+    @Test
+    public void unreachableTarget() {
+        check(-1, null, "S.#T");
+        check(-1, null,
+            "S.###",
+            "..#T#",
+            "..###");
+    }
+
+    /**
+     * Route from S, or the given start, to T on a map drawn for {@link RouteChecks#brain(int, String...)} with the bidirectional search and with A*.
+     * If there is no T, the route is to the start.
+     * @param p_length The number of steps on the shortest route, or -1 if there is none.
+     * @param p_from The start, or null to start from S.
+     * @param p_rows The map.
+     */
+    private static void check(int p_length, Point p_from, String... p_rows) {
+        Point from = (p_from != null) ? p_from : RouteChecks.find('S', p_rows);
+        Point to = String.join("", p_rows).indexOf('T') >= 0 ? RouteChecks.find('T', p_rows) : from;
+        assertEquals("A*", p_length, RouteChecks.route(RouteChecks.brain(AntBrain.PLANNER_A_STAR, p_rows), from, to));
+        assertEquals("Bidirectional", p_length, RouteChecks.route(RouteChecks.brain(AntBrain.PLANNER_BIDIRECTIONAL, p_rows), from, to));
+    }
+}
@@ -0,0 +1,161 @@
+package ants;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for how the Traffic Cop's {@link FoodDispatcher} keeps count of the food it sends workers for.
+ *
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+public class FoodDispatcherTest {
+
+    //Id of the worker being sent for food.
+    private static final int WORKER_ID = 7;
+    //Where the pile is, relative to home, and how much food it has.
+    private static final int PILE_X = 3, PILE_Y = 0, PILE_FOOD = 5;
+
+    private AntKnowledge knowledge;
+    private FoodDispatcher dispatcher;
+    private int pileCell;
+
+    /**
+     * A Traffic Cop that knows of one pile, down an open corridor from home, and has sent the worker for it.
+     */
+    @Before
+    public void sendWorkerForPile() {
+        knowledge = new AntKnowledge(AntBrain.TRAFFIC_COP, AntKnowledge.INITIAL_SPAN, AntKnowledge.MAX_SPAN);
+        knowledge.year = 10;
+        for (int x = 0; x <= PILE_X; x++)
+            knowledge.setTraversable(knowledge.cell(x, PILE_Y), true, 1);
+        pileCell = knowledge.cell(PILE_X, PILE_Y);
+        knowledge.setFood(pileCell, PILE_FOOD, 1);
+
+        dispatcher = new FoodDispatcher();
+        dispatcher.hear(knowledge, workerMessage());
+        assertArrayEquals(new int[] {WORKER_ID, PILE_X, PILE_Y}, dispatcher.assignments(knowledge.year));
+        knowledge.year++;
+    }
+
+    /**
+     * A worker that never mapped the pile gives up on it, but its -1 doesn't wipe the pile out.
+     */
+    @Test
+    public void unmappedWorkerLeavesPile() {
+        AntMessage message = targetMessage(-1);
+        dispatcher.hear(knowledge, message);
+        assertEquals(PILE_FOOD, knowledge.getFood(pileCell));
+    }
+
+    /**
+     * A worker that heard from a friend the pile is empty, but hasn't been there, doesn't wipe it out either.
+     */
+    @Test
+    public void staleWorkerLeavesPile() {
+        AntMessage message = targetMessage(0);
+        dispatcher.hear(knowledge, message);
+        assertEquals(PILE_FOOD, knowledge.getFood(pileCell));
+    }
+
+    /**
+     * A worker that stood on the pile and found it empty is believed.
+     */
+    @Test
+    public void workerThatWasThereEmptiesPile() {
+        AntMessage message = targetMessage(0);
+        message.atTarget = true;
+        dispatcher.hear(knowledge, message);
+        assertEquals(0, knowledge.getFood(pileCell));
+        assertEquals(0, dispatcher.size());
+    }
+
+    /**
+     * A worker back with food from the pile takes one unit off it.
+     */
+    @Test
+    public void workerCarryingFoodTakesOneUnit() {
+        AntMessage message = targetMessage(PILE_FOOD - 1);
+        message.atTarget = true;
+        message.holdingFood = true;
+        dispatcher.hear(knowledge, message);
+        assertEquals(PILE_FOOD - 1, knowledge.getFood(pileCell));
+    }
+
+    /**
+     * A worker carrying food home from somewhere else didn't take any from the pile.
+     */
+    @Test
+    public void workerCarryingOtherFoodLeavesPile() {
+        AntMessage message = targetMessage(PILE_FOOD);
+        message.holdingFood = true;
+        dispatcher.hear(knowledge, message);
+        assertEquals(PILE_FOOD, knowledge.getFood(pileCell));
+    }
+
+    /**
+     * Seeing the pile again with the same food doesn't make the queue stale, but a change to its food does.
+     */
+    @Test
+    public void foodVersionOnlyCountsFoodChanges() {
+        int foodVersion = knowledge.foodVersion;
+        knowledge.setFood(pileCell, PILE_FOOD, knowledge.year);
+        assertEquals(foodVersion, knowledge.foodVersion);
+        knowledge.setFood(pileCell, PILE_FOOD - 1, knowledge.year);
+        assertEquals(foodVersion + 1, knowledge.foodVersion);
+    }
+
+    /**
+     * Food learned after the queue was built is sent for once the pile is gone.
+     */
+    @Test
+    public void newFoodIsSentFor() {
+        knowledge.setTraversable(knowledge.cell(0, 1), true, knowledge.year);
+        knowledge.setFood(knowledge.cell(0, 1), 1, knowledge.year);
+        knowledge.setFood(pileCell, 0, knowledge.year);
+        AntMessage message = targetMessage(0);
+        message.atTarget = true;
+        dispatcher.hear(knowledge, message);
+        assertArrayEquals(new int[] {WORKER_ID, 0, 1}, dispatcher.assignments(knowledge.year));
+    }
+
+    /**
+     * Whether the worker stood on the pile survives the trip through the {@link MessageCodec}.
+     */
+    @Test
+    public void atTargetIsSent() throws IOException {
+        AntMessage message = targetMessage(0);
+        message.atTarget = true;
+        assertTrue(new MessageCodec().decode(new MessageCodec().encode(message)).atTarget);
+        message.atTarget = false;
+        assertFalse(new MessageCodec().decode(new MessageCodec().encode(message)).atTarget);
+    }
+
+    /**
+     * A message from the worker, without a target.
+     * @return The message.
+     */
+    private AntMessage workerMessage() {
+        AntMessage message = new AntMessage();
+        message.role = AntBrain.WORKER;
+        message.id = WORKER_ID;
+        message.year = knowledge.year;
+        return message;
+    }
+
+    /**
+     * A message from the worker, going for the pile.
+     * @param p_targetFood Food the worker believes is on the pile, -1 if it doesn't know the spot.
+     * @return The message, not holding food and not at the pile.
+     */
+    private AntMessage targetMessage(int p_targetFood) {
+        AntMessage message = this.workerMessage();
+        message.hasTarget = true;
+        message.targetX = PILE_X;
+        message.targetY = PILE_Y;
+        message.targetFood = p_targetFood;
+        return message;
+    }
+}
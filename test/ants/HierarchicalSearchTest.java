@@ -0,0 +1,77 @@
+package ants;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests that {@link RouteSearch#searchHierarchical} finds a walkable route whenever plain A* finds one, though it may be longer,
+ * and keeps doing so as the map grows and its chunks' cluster graphs go stale.
+ *
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+public class HierarchicalSearchTest {
+
+    //Half the width of the open room the chunk border test runs in.  Home is on the corner of four chunks.
+    private static final int ROOM = 6;
+
+    /**
+     * Routes between random spots of the seeded synthetic maps are found exactly when A* finds one, are walkable, and are no shorter.
+     */
+    @Test
+    public void reachesWhatAStarReaches() {
+        RouteChecks.compareWithAStar(AntBrain.PLANNER_HIERARCHICAL, false);
+    }
+
+    /**
+     * After the map grows and every cell is renumbered, the cluster graphs built before still lead to walkable routes.
+     */
+    @Test
+    public void routesAfterTheMapGrows() {
+        for (long seed : RouteChecks.SEEDS) {
+            AntBenchmark.SyntheticMap map = new AntBenchmark.SyntheticMap(12, 0.15, seed);
+            AntBrain aStar = RouteChecks.brain(map, AntBrain.PLANNER_A_STAR), hierarchical = RouteChecks.brain(map, AntBrain.PLANNER_HIERARCHICAL);
+            Random random = new Random(seed);
+            Point[] from = new Point[RouteChecks.PAIRS], to = new Point[RouteChecks.PAIRS];
+            for (int i = 0; i < from.length; i++) {
+                from[i] = map.toPoint(map.reachable[random.nextInt(map.reachable.length)]);
+                to[i] = map.toPoint(map.reachable[random.nextInt(map.reachable.length)]);
+                assertTrue(RouteChecks.route(hierarchical, from[i], to[i]) >= 0);
+            }
+
+            int span = hierarchical.knowledge.span;
+            hierarchical.knowledge.growToFit(-span, -span);
+            assertTrue(hierarchical.knowledge.span > span);
+            //Back the other way, so the routes aren't in the route cache.
+            for (int i = 0; i < from.length; i++)
+                assertTrue("From " + to[i] + " to " + from[i] + " with seed " + seed,
+                    RouteChecks.route(hierarchical, to[i], from[i]) >= RouteChecks.route(aStar, to[i], from[i]));
+        }
+    }
+
+    /**
+     * A route across a chunk border finds the other way across once the spot it crossed at is blocked, and none once every way is.
+     */
+    @Test
+    public void crossingCutByNewObstacle() {
+        AntBrain hierarchical = new AntBrain();
+        hierarchical.routePlanner = AntBrain.PLANNER_HIERARCHICAL;
+        AntKnowledge knowledge = hierarchical.knowledge;
+        for (int x = -ROOM; x < ROOM; x++)
+            for (int y = -ROOM; y < ROOM; y++)
+                knowledge.setTraversable(knowledge.cell(x, y), true, 1);
+        Point from = new Point(-ROOM / 2, 0), to = new Point(ROOM / 2, 0);
+        assertTrue(RouteChecks.route(hierarchical, from, to) >= 2 * (ROOM / 2));
+
+        //Wall off the chunks east of home from the ones west of it, but for the top row.
+        for (int y = -ROOM; y < ROOM - 1; y++)
+            knowledge.setTraversable(knowledge.cell(0, y), false, 2);
+        assertTrue(RouteChecks.route(hierarchical, from, to) >= 2 * (ROOM / 2) + 2 * (ROOM - 1));
+
+        knowledge.setTraversable(knowledge.cell(0, ROOM - 1), false, 3);
+        assertEquals(-1, RouteChecks.route(hierarchical, from, to));
+        assertEquals(-1, RouteChecks.route(hierarchical, to, from));
+    }
+}
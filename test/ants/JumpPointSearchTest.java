@@ -0,0 +1,115 @@
+package ants;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import org.junit.Test;
+
+/**
+ * Tests that {@link RouteSearch#searchJumpPoints} finds the same routes as plain A*, on seeded synthetic maps and on the corners that pruning can get wrong.
+ *
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+public class JumpPointSearchTest {
+
+    /**
+     * Routes between random spots of the seeded synthetic maps are found exactly when A* finds one, and are just as short.
+     */
+    @Test
+    public void matchesAStarOnSyntheticMaps() {
+        RouteChecks.compareWithAStar(AntBrain.PLANNER_JUMP_POINT, true);
+    }
+
+    /**
+     * A wall right next to the start, in the way of the first jump east.
+     */
+    @Test
+    public void wallBesideStartEast() {
+        check(4,
+            ".....",
+            ".S#T.",
+            ".....");
+    }
+
+    /**
+     * A wall right next to the start, in the way of the first jump north.
+     */
+    @Test
+    public void wallBesideStartNorth() {
+        check(4,
+            ".T.",
+            ".#.",
+            ".S.");
+    }
+
+    /**
+     * Walls on three sides of the start, so the only way out is away from the target.
+     */
+    @Test
+    public void boxedInStart() {
+        check(4,
+            ".....",
+            ".###.",
+            ".#S#T",
+            ".....");
+    }
+
+    /**
+     * A winding corridor, where every turn from horizontal to vertical is forced by a wall ending.
+     */
+    @Test
+    public void windingCorridor() {
+        check(13,
+            "S.#.....",
+            "#.#.##.#",
+            "#...#T.#",
+            "#####..#");
+    }
+
+    /**
+     * A route that has to turn from horizontal to vertical where nothing beside it forces a turn, because the target is straight up from there.
+     */
+    @Test
+    public void targetAboveARow() {
+        check(7,
+            ".....T",
+            "#####.",
+            "S.....");
+    }
+
+    /**
+     * The target is walled off, so neither finds a route.
+     */
+    @Test
+    public void walledOffTarget() {
+        check(-1,
+            "S..###",
+            "...#T#",
+            "...###");
+    }
+
+    /**
+     * Start and target the same spot, and the target one step away.
+     */
+    @Test
+    public void startAndNeighbor() {
+        check(0, "S.");
+        check(1, "ST");
+        check(1,
+            "T",
+            "S");
+    }
+
+    /**
+     * Route from S to T on a map drawn for {@link RouteChecks#brain(int, String...)} with Jump Point Search and with A*.
+     * If there is no T, the route is to S.
+     * @param p_length The number of steps on the shortest route, or -1 if there is none.
+     * @param p_rows The map.
+     */
+    private static void check(int p_length, String... p_rows) {
+        Point from = RouteChecks.find('S', p_rows);
+        Point to = String.join("", p_rows).indexOf('T') >= 0 ? RouteChecks.find('T', p_rows) : from;
+        assertEquals("A*", p_length, RouteChecks.route(RouteChecks.brain(AntBrain.PLANNER_A_STAR, p_rows), from, to));
+        assertEquals("Jump Point Search", p_length, RouteChecks.route(RouteChecks.brain(AntBrain.PLANNER_JUMP_POINT, p_rows), from, to));
+    }
+}
@@ -0,0 +1,111 @@
+package ants;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests that {@link RouteSearch#searchLandmarks} finds the same routes as plain A*, and that its landmark estimate never overshoots,
+ * even after spots are found blocked once the landmark tables were built.
+ *
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+public class LandmarkSearchTest {
+
+    //Fraction of the reachable spots found blocked after the landmark tables are built, and of the walls later found open.
+    private static final double CHANGED = 0.05;
+
+    /**
+     * Routes between random spots of the seeded synthetic maps are found exactly when A* finds one, and are just as short.
+     */
+    @Test
+    public void matchesAStarOnSyntheticMaps() {
+        RouteChecks.compareWithAStar(AntBrain.PLANNER_LANDMARKS, true);
+    }
+
+    /**
+     * Once spots are found blocked, routes are still as short as A*'s, and no landmark says two spots are closer than the shortest route between them.
+     * Then some walls are found open, which would make the tables built before overshoot, had they been kept.
+     */
+    @Test
+    public void spotsChangedAfterLandmarksWereBuilt() {
+        for (double density : RouteChecks.DENSITIES) {
+            for (long seed : RouteChecks.SEEDS) {
+                AntBenchmark.SyntheticMap map = new AntBenchmark.SyntheticMap(24, density, seed);
+                AntBrain aStar = RouteChecks.brain(map, AntBrain.PLANNER_A_STAR), landmarks = RouteChecks.brain(map, AntBrain.PLANNER_LANDMARKS);
+                Random random = new Random(seed);
+                Point home = new Point(0, 0), far = map.toPoint(map.reachable[map.reachable.length - 1]);
+
+                //Build the tables, then find some open spots blocked.
+                RouteChecks.route(landmarks, home, far);
+                for (int spot : map.reachable)
+                    if (random.nextDouble() < CHANGED && !map.toPoint(spot).equals(home))
+                        change(map, spot, false, aStar, landmarks);
+                checkRoutes(map, aStar, landmarks, random, "density " + density + ", seed " + seed + ", with spots blocked");
+
+                //Build them again, then find some walls open.
+                RouteChecks.route(landmarks, far, home);
+                for (int spot : map.reachable)
+                    for (int wall : map.neighbors(spot))
+                        if (!map.open[wall] && random.nextDouble() < CHANGED)
+                            change(map, wall, true, aStar, landmarks);
+                checkRoutes(map, aStar, landmarks, random, "density " + density + ", seed " + seed + ", with walls opened");
+            }
+        }
+    }
+
+    /**
+     * Tell brains a spot of a synthetic map has changed whether it is traversable.
+     * @param p_map The map.
+     * @param p_spot The spot.
+     * @param p_traversable Whether it is traversable now.
+     * @param p_brains The brains to tell.
+     */
+    private static void change(AntBenchmark.SyntheticMap p_map, int p_spot, boolean p_traversable, AntBrain... p_brains) {
+        for (AntBrain brain : p_brains)
+            brain.knowledge.setTraversable(p_map.cellIn(brain, p_spot), p_traversable, 2);
+    }
+
+    /**
+     * Route between random open spots with landmarks and with A*, checking the routes are just as short and that the landmarks don't overestimate.
+     * @param p_map The map.
+     * @param p_aStar Brain routing with A*.
+     * @param p_landmarks Brain routing with landmarks, knowing the same spots.
+     * @param p_random Where to pick the spots from.
+     * @param p_case Description of the map, for the failure messages.
+     */
+    private static void checkRoutes(AntBenchmark.SyntheticMap p_map, AntBrain p_aStar, AntBrain p_landmarks, Random p_random, String p_case) {
+        AntKnowledge knowledge = p_landmarks.knowledge;
+        for (int i = 0; i < RouteChecks.PAIRS; i++) {
+            Point from = open(p_map, knowledge, p_random), to = open(p_map, knowledge, p_random);
+            String pair = "From " + from + " to " + to + " on " + p_case;
+            int expected = RouteChecks.route(p_aStar, from, to);
+            assertEquals(pair, expected, RouteChecks.route(p_landmarks, from, to));
+            if (expected < 0)
+                continue;
+            int fromCell = knowledge.cell(from.x, from.y), toCell = knowledge.cell(to.x, to.y);
+            for (int landmark = 0; landmark <= AntKnowledge.LANDMARKS; landmark++) {
+                int a = knowledge.landmarkDistance(fromCell, landmark), b = knowledge.landmarkDistance(toCell, landmark);
+                assertEquals(pair + ", landmark " + landmark + " reached from only one end", a >= 0, b >= 0);
+                assertTrue(pair + ", landmark " + landmark + " overestimates", Math.abs(a - b) <= expected);
+            }
+        }
+    }
+
+    /**
+     * A random spot of a synthetic map that is still known to be traversable.
+     * @param p_map The map.
+     * @param p_knowledge Knowledge of the map, with some spots blocked since.
+     * @param p_random Where to pick from.
+     * @return The spot, relative to home.
+     */
+    private static Point open(AntBenchmark.SyntheticMap p_map, AntKnowledge p_knowledge, Random p_random) {
+        while (true) {
+            Point p = p_map.toPoint(p_map.reachable[p_random.nextInt(p_map.reachable.length)]);
+            if (p_knowledge.isTraversable(p_knowledge.cell(p.x, p.y)))
+                return p;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package ants;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link RouteCache} an ant keeps its recent routes in.
+ *
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+public class RouteCacheTest {
+
+    /**
+     * A cached route comes back with the same steps, and is gone once removed.
+     */
+    @Test
+    public void putGetRemove() {
+        RouteCache cache = new RouteCache(4);
+        cache.put(42L, route(3, 0, 1, 2), 5);
+        int entry = cache.get(42L);
+        assertTrue(entry >= 0);
+        assertEquals(4, cache.length(entry));
+        assertArrayEquals(new int[] {3, 0, 1, 2}, Arrays.copyOf(cache.steps(entry), cache.length(entry)));
+        assertEquals(5, cache.blockedVersion(entry));
+        cache.remove(42L);
+        assertEquals(-1, cache.get(42L));
+    }
+
+    /**
+     * A full cache replaces its least recently used route, and reuses that route's step array.
+     */
+    @Test
+    public void evictsLeastRecentlyUsedAndReusesItsSteps() {
+        RouteCache cache = new RouteCache(2);
+        cache.put(1L, route(0, 0, 0), 0);
+        cache.put(2L, route(1, 1, 1), 0);
+        int[] oldest = cache.steps(cache.get(2L));
+        cache.get(1L);
+        cache.put(3L, route(2, 2), 0);
+        assertEquals(-1, cache.get(2L));
+        assertTrue(cache.get(1L) >= 0);
+        int entry = cache.get(3L);
+        assertSame(oldest, cache.steps(entry));
+        assertEquals(2, cache.length(entry));
+    }
+
+    /**
+     * Random puts, gets and removes give the same answers as a least recently used LinkedHashMap,
+     * with keys crowded together so the open addressed table has long probe runs to repair on removal.
+     */
+    @Test
+    public void matchesLinkedHashMap() {
+        final int capacity = 16;
+        RouteCache cache = new RouteCache(capacity);
+        LinkedHashMap<Long, Integer> reference = new LinkedHashMap<Long, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+                return size() > capacity;
+            }
+        };
+        Random random = new Random(7);
+        for (int i = 0; i < 200000; i++) {
+            long key = random.nextInt(40);
+            int op = random.nextInt(3);
+            if (op == 0) {
+                int length = random.nextInt(6);
+                cache.put(key, route(new int[length]), length);
+                reference.put(key, length);
+            }
+            else if (op == 1) {
+                int entry = cache.get(key);
+                Integer expected = reference.get(key);
+                assertEquals(expected != null, entry >= 0);
+                if (expected != null)
+                    assertEquals((int) expected, cache.blockedVersion(entry));
+            }
+            else {
+                cache.remove(key);
+                reference.remove(key);
+            }
+        }
+    }
+
+    /**
+     * A route with the given steps, as a {@link Route} keeps them, with the first step to take at the end.
+     * @param p_steps The steps.
+     * @return The route.
+     */
+    private static Route route(int... p_steps) {
+        Route route = new Route();
+        for (int step : p_steps)
+            route.add(step);
+        return route;
+    }
+}
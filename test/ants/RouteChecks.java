@@ -0,0 +1,129 @@
+package ants;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import java.util.Random;
+
+/**
+ * Checks shared by the route planner tests: brains that know a seeded {@link AntBenchmark.SyntheticMap} or a small map drawn by hand,
+ * and routes walked step by step over what the brain knows.
+ *
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+final class RouteChecks {
+
+    //Known area around home, obstacle densities and seeds of the synthetic maps the planners are compared on.
+    static final int[] RADII = {12, 24};
+    static final double[] DENSITIES = {0.0, 0.15, 0.3};
+    static final long[] SEEDS = {1L, 2L, 3L};
+    //Routes asked for on each synthetic map.
+    static final int PAIRS = 150;
+
+    private RouteChecks() {
+    }
+
+    /**
+     * A fresh brain that knows the whole of a synthetic map, with its own route cache.
+     * @param p_map The map.
+     * @param p_planner The {@link AntBrain#routePlanner} to use.
+     * @return The brain.
+     */
+    static AntBrain brain(AntBenchmark.SyntheticMap p_map, int p_planner) {
+        AntBrain brain = new AntBrain();
+        p_map.teach(brain, 1);
+        brain.routePlanner = p_planner;
+        return brain;
+    }
+
+    /**
+     * A fresh brain that knows a small map drawn row by row, top row north, with home at the bottom left.
+     * '#' is a blocked spot, ' ' a spot nobody knows, and anything else a traversable spot.
+     * @param p_planner The {@link AntBrain#routePlanner} to use.
+     * @param p_rows The rows.
+     * @return The brain.
+     */
+    static AntBrain brain(int p_planner, String... p_rows) {
+        AntBrain brain = new AntBrain();
+        AntKnowledge knowledge = brain.knowledge;
+        for (int row = 0; row < p_rows.length; row++) {
+            for (int x = 0; x < p_rows[row].length(); x++) {
+                char c = p_rows[row].charAt(x);
+                if (c != ' ')
+                    knowledge.setTraversable(knowledge.cell(x, p_rows.length - 1 - row), c != '#', 1);
+            }
+        }
+        brain.routePlanner = p_planner;
+        return brain;
+    }
+
+    /**
+     * Where a letter is on a map drawn for {@link #brain(int, String...)}.
+     * @param p_letter The letter.
+     * @param p_rows The rows.
+     * @return Its location, relative to home.
+     */
+    static Point find(char p_letter, String... p_rows) {
+        for (int row = 0; row < p_rows.length; row++) {
+            int x = p_rows[row].indexOf(p_letter);
+            if (x >= 0)
+                return new Point(x, p_rows.length - 1 - row);
+        }
+        throw new IllegalArgumentException("No " + p_letter + " on the map");
+    }
+
+    /**
+     * Route from one spot to another, and walk the route, checking that every spot on it is known to be traversable and that it ends at the target.
+     * @param p_brain The brain to route with.
+     * @param p_from Spot to route from.
+     * @param p_to Spot to route to.
+     * @return Number of steps on the route, or -1 if there is none.
+     */
+    static int route(AntBrain p_brain, Point p_from, Point p_to) {
+        p_brain.currentPoint.setLocation(p_from);
+        if (!p_brain.findRoute(p_to)) {
+            assertEquals("Steps left after no route from " + p_from + " to " + p_to, 0, p_brain.currentRoute.size());
+            return -1;
+        }
+        AntKnowledge knowledge = p_brain.knowledge;
+        int[] steps = p_brain.currentRoute.toSteps();
+        int x = p_from.x, y = p_from.y;
+        for (int i = steps.length - 1; i >= 0; i--) {
+            x += AntBrain.STEP_X[steps[i]];
+            y += AntBrain.STEP_Y[steps[i]];
+            int cell = knowledge.onGrid(x, y) ? knowledge.cell(x, y) : -1;
+            assertTrue("Route from " + p_from + " to " + p_to + " crosses " + x + "," + y, cell >= 0 && knowledge.isTraversable(cell));
+        }
+        assertEquals("End of the route from " + p_from + " to " + p_to, p_to, new Point(x, y));
+        return steps.length;
+    }
+
+    /**
+     * Route between random spots of the seeded synthetic maps with a planner and with plain A*, and check they agree on which targets can be reached.
+     * Targets are any spot of the map, so some are blocked, and some are open but walled off.
+     * @param p_planner The planner to check.
+     * @param p_shortest True if the planner's routes must be as short as A*'s, false if they may be longer.
+     */
+    static void compareWithAStar(int p_planner, boolean p_shortest) {
+        for (int radius : RADII) {
+            for (double density : DENSITIES) {
+                for (long seed : SEEDS) {
+                    AntBenchmark.SyntheticMap map = new AntBenchmark.SyntheticMap(radius, density, seed);
+                    AntBrain aStar = brain(map, AntBrain.PLANNER_A_STAR), planner = brain(map, p_planner);
+                    Random random = new Random(seed);
+                    for (int i = 0; i < PAIRS; i++) {
+                        Point from = map.toPoint(map.reachable[random.nextInt(map.reachable.length)]);
+                        Point to = new Point(random.nextInt(2 * radius + 1) - radius, random.nextInt(2 * radius + 1) - radius);
+                        String pair = "From " + from + " to " + to + " on radius " + radius + ", density " + density + ", seed " + seed;
+                        int expected = route(aStar, from, to), actual = route(planner, from, to);
+                        assertEquals(pair, expected >= 0, actual >= 0);
+                        if (p_shortest)
+                            assertEquals(pair, expected, actual);
+                        else
+                            assertTrue(pair, actual >= expected);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package ants;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Tests for how the colony elects its Scanners and splits the map into their sectors.
+ *
+ * @author Jesse Smith (jesse@steelcorelabs.com)
+ */
+public class ScannerElectionTest {
+
+    /**
+     * Every colony of two or more ants, not counting the Traffic Cop, elects one Scanner for each {@link AntBrain#ANTS_PER_SCANNER} ants,
+     * at least one and at most {@link AntBrain#SCANNERS}, and keeps at least one worker.
+     */
+    @Test
+    public void colonyKeepsAWorker() {
+        for (int size = 2; size <= 30; size++) {
+            AntBrain[] brains = elect(size);
+            int scanners = 0;
+            for (AntBrain brain : brains)
+                if (brain.knowledge.role == AntBrain.SCANNER)
+                    scanners++;
+            int expected = Math.max(1, Math.min(AntBrain.SCANNERS, size / AntBrain.ANTS_PER_SCANNER));
+            assertEquals("Scanners in a colony of " + size, expected, scanners);
+            assertTrue("Workers in a colony of " + size, scanners < size);
+        }
+    }
+
+    /**
+     * Hearing the same friend again doesn't change the election.
+     */
+    @Test
+    public void friendsHeardTwiceCountOnce() {
+        AntBrain brain = new AntBrain();
+        brain.knowledge.id = 10;
+        for (int id = 1; id <= 3; id++) {
+            brain.electScanner(id);
+            brain.electScanner(id);
+        }
+        assertEquals(AntBrain.WORKER, brain.knowledge.role);
+    }
+
+    /**
+     * Small colonies still bring food home.  They used to send every ant out scanning.
+     */
+    @Test
+    public void smallColonyDeliversFood() {
+        for (long seed = 1; seed <= 5; seed++) {
+            ColonySimulator sim = new ColonySimulator(3, 60, 0.15, 8, seed);
+            for (int turn = 0; turn < 1500; turn++)
+                sim.step();
+            assertTrue("Food delivered with seed " + seed, sim.getFoodDelivered() > 0);
+        }
+    }
+
+    /**
+     * Every spot around home is in exactly one Scanner's sector, and the sectors are the same slices of the angle as atan2 gives,
+     * except right on their edges.
+     */
+    @Test
+    public void sectorsSplitTheMap() {
+        for (int sectors = 2; sectors <= 7; sectors++) {
+            AntBrain[] brains = new AntBrain[sectors];
+            for (int i = 0; i < sectors; i++) {
+                brains[i] = new AntBrain();
+                brains[i].setAsScanner(i, sectors);
+            }
+            for (int x = -40; x <= 40; x++) {
+                for (int y = -40; y <= 40; y++) {
+                    if (x == 0 && y == 0)
+                        continue;
+                    int owners = 0, owner = -1;
+                    for (int i = 0; i < sectors; i++) {
+                        if (brains[i].inSector(x, y)) {
+                            owners++;
+                            owner = i;
+                        }
+                    }
+                    assertEquals("Owners of " + x + "," + y + " in " + sectors + " sectors", 1, owners);
+                    double turn = (Math.atan2(y, x) + Math.PI) / (2 * Math.PI) * sectors;
+                    if (Math.abs(turn - Math.rint(turn)) > 1e-9)
+                        assertEquals("Sector of " + x + "," + y + " in " + sectors + " sectors", Math.min((int) turn, sectors - 1), owner);
+                }
+            }
+        }
+    }
+
+    /**
+     * Run the year 2 election among ants numbered 1 to size, each hearing all the others.
+     * @param p_size Number of ants, not counting the Traffic Cop.
+     * @return Their brains after the election.
+     */
+    private static AntBrain[] elect(int p_size) {
+        AntBrain[] brains = new AntBrain[p_size];
+        for (int i = 0; i < p_size; i++) {
+            brains[i] = new AntBrain();
+            brains[i].knowledge.id = i + 1;
+            brains[i].setAsWorker();
+        }
+        for (int i = 0; i < p_size; i++)
+            for (int j = 0; j < p_size; j++)
+                if (i != j)
+                    brains[i].electScanner(j + 1);
+        return brains;
+    }
+}